@@ -0,0 +1,289 @@
+package com.jrxna.mongoose.bench;
+
+import com.jrxna.mongoose.MongooseCli;
+import com.jrxna.mongoose.model.BuildOptions;
+import com.jrxna.mongoose.model.BuildReport;
+import com.jrxna.mongoose.service.BuildManifestService;
+import com.jrxna.mongoose.service.MarkdownParserService;
+import com.jrxna.mongoose.service.PrecompressionService;
+import com.jrxna.mongoose.service.SearchIndexService;
+import com.jrxna.mongoose.service.SiteGeneratorService;
+import com.jrxna.mongoose.service.SitemapService;
+import com.jrxna.mongoose.service.TemplateService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end build benchmark. Generates seeded corpora (1k and 10k pages by
+ * default), builds each one in a fresh JVM and reports wall time, time per
+ * phase, peak heap, peak RSS and bytes written. Results are printed as a
+ * table and appended to a CSV in the work directory.
+ *
+ * Any other --flag is a build option and is passed on to each build. With
+ * the default inline sidebar the output grows with the square of the page
+ * count, so larger sizes want --nav=fragment:
+ *
+ * ./gradlew buildBenchmark -PbenchArgs="--sizes=1000,10000,100000 --threads=8 --nav=fragment"
+ */
+public class BuildBenchmark {
+
+    private static final String RESULT_PREFIX = "RESULT ";
+    private static final List<String> PHASES = List.of("scan", "parse", "sort", "render", "write", "index", "assets");
+
+    // Options of the benchmark itself; the rest are build options
+    private static final Set<String> OWN_OPTIONS = Set.of("run", "input", "output", "work", "seed",
+            "files-per-section", "front-matter", "threads", "sizes", "jvm-args", "keep-output");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        if (options.containsKey("run")) {
+            runBuild(options);
+            return;
+        }
+
+        Path workDir = Paths.get(options.getOrDefault("work", "build/bench"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int filesPerSection = Integer.parseInt(options.getOrDefault("files-per-section", "100"));
+        String frontMatter = options.getOrDefault("front-matter", "FLAT");
+        String threads = options.getOrDefault("threads", "1");
+        List<String> buildFlags = buildFlags(options);
+        if (MongooseCli.parseOptions(buildFlags.toArray(new String[0])) == null) {
+            throw new IllegalArgumentException("Unknown build option among " + buildFlags);
+        }
+
+        List<Map<String, String>> results = new ArrayList<>();
+        for (String size : options.getOrDefault("sizes", "1000,10000").split(",")) {
+            int pages = Integer.parseInt(size.trim());
+
+            CorpusGenerator generator = new CorpusGenerator();
+            generator.setSeed(seed);
+            generator.setFilesPerSection(Math.min(filesPerSection, pages));
+            generator.setSections(Math.max(1, pages / generator.getFilesPerSection()));
+            generator.setFrontMatter(CorpusGenerator.FrontMatter.valueOf(frontMatter.toUpperCase()));
+
+            Path corpus = workDir.resolve("corpus-" + pages + "-" + frontMatter.toLowerCase() + "-" + seed);
+            prepareCorpus(generator, corpus);
+
+            Path output = workDir.resolve("site-" + pages);
+            deleteTree(output);
+
+            System.out.println("🏗  Building " + generator.getTotalFiles() + " pages...");
+            Map<String, String> result = forkBuild(corpus, output, threads, buildFlags, options.get("jvm-args"));
+            result.put("pages", String.valueOf(generator.getTotalFiles()));
+            results.add(result);
+
+            // With inline navigation every page carries the full sidebar, so large sites are large on disk
+            if (!options.containsKey("keep-output")) {
+                deleteTree(output);
+            }
+        }
+
+        printTable(results);
+        appendCsv(workDir.resolve("build-benchmark.csv"), results, seed, frontMatter, threads, buildFlags);
+    }
+
+    private static void prepareCorpus(CorpusGenerator generator, Path corpus) throws IOException {
+        // Corpora are deterministic, so one generated earlier can be reused
+        Path marker = corpus.resolve(".complete");
+        if (Files.exists(marker)) {
+            return;
+        }
+        deleteTree(corpus);
+        Files.createDirectories(corpus);
+
+        long start = System.nanoTime();
+        long bytes = generator.generate(corpus);
+        Files.writeString(marker, "");
+        System.out.printf("📚 Generated %d pages (%.1f MB) in %d ms%n",
+                generator.getTotalFiles(), bytes / 1e6, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Each build gets its own JVM so peak heap and RSS belong to that build alone
+    private static Map<String, String> forkBuild(Path corpus, Path output, String threads, List<String> buildFlags,
+            String jvmArgs) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (jvmArgs != null) {
+            command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), BuildBenchmark.class.getName(),
+                "--run", "--input=" + corpus, "--output=" + output, "--threads=" + threads));
+        command.addAll(buildFlags);
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        Map<String, String> result = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    for (String pair : line.substring(RESULT_PREFIX.length()).split(" ")) {
+                        int eq = pair.indexOf('=');
+                        result.put(pair.substring(0, eq), pair.substring(eq + 1));
+                    }
+                }
+            }
+        }
+
+        int exit = process.waitFor();
+        if (exit != 0 || result.isEmpty()) {
+            throw new IOException("Benchmark build of " + corpus + " failed with exit code " + exit);
+        }
+        return result;
+    }
+
+    /**
+     * Child side: runs one build and prints a single result line.
+     */
+    private static void runBuild(Map<String, String> args) throws IOException {
+        BuildOptions options = MongooseCli.parseOptions(buildFlags(args).toArray(new String[0]));
+        options.setThreads(Integer.parseInt(args.getOrDefault("threads", "1")));
+
+        // The generator's own progress output would drown the result line
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+
+        SiteGeneratorService generator = new SiteGeneratorService(new MarkdownParserService(),
+                new TemplateService(), new BuildManifestService(), new PrecompressionService(),
+                new SearchIndexService(), new SitemapService());
+        BuildReport report;
+        long wallNanos;
+        try {
+            long start = System.nanoTime();
+            report = generator.generateSite(args.get("input"), args.get("output"), options);
+            wallNanos = System.nanoTime() - start;
+        } finally {
+            System.setOut(out);
+        }
+
+        StringBuilder line = new StringBuilder(RESULT_PREFIX)
+                .append("wallMs=").append(wallNanos / 1_000_000);
+        for (String phase : PHASES) {
+            line.append(' ').append(phase).append("Ms=")
+                    .append(report.getPhaseNanos(phase) / 1_000_000);
+        }
+        line.append(" peakHeapMb=").append(peakHeapBytes() / (1024 * 1024))
+                .append(" peakRssMb=").append(peakRssKb() / 1024)
+                .append(" bytesWritten=").append(report.getBytesWritten());
+        out.println(line);
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    // VmHWM is the resident set high-water mark; only Linux exposes it
+    private static long peakRssKb() {
+        try (Stream<String> lines = Files.lines(Paths.get("/proc/self/status"))) {
+            return lines.filter(line -> line.startsWith("VmHWM:"))
+                    .map(line -> Long.parseLong(line.replaceAll("[^0-9]", "")))
+                    .findFirst()
+                    .orElse(-1L);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void printTable(List<Map<String, String>> results) {
+        String format = "%8s %9s %7s %8s %6s %8s %8s %6s %8s %9s %9s %10s%n";
+        System.out.println();
+        System.out.printf(format, "pages", "wall ms", "scan", "parse", "sort", "render", "write", "index",
+                "assets", "heap MB", "RSS MB", "MB out");
+        for (Map<String, String> result : results) {
+            System.out.printf(format, result.get("pages"), result.get("wallMs"), result.get("scanMs"),
+                    result.get("parseMs"), result.get("sortMs"), result.get("renderMs"), result.get("writeMs"),
+                    result.get("indexMs"), result.get("assetsMs"),
+                    result.get("peakHeapMb"), result.get("peakRssMb"),
+                    String.format("%.1f", Long.parseLong(result.get("bytesWritten")) / 1e6));
+        }
+    }
+
+    private static void appendCsv(Path csv, List<Map<String, String>> results, long seed, String frontMatter,
+            String threads, List<String> buildFlags) throws IOException {
+        List<String> columns = List.of("pages", "wallMs", "scanMs", "parseMs", "sortMs", "renderMs", "writeMs", "indexMs", "assetsMs",
+                "peakHeapMb", "peakRssMb", "bytesWritten");
+        String version = BuildBenchmark.class.getPackage().getImplementationVersion();
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+
+        StringBuilder rows = new StringBuilder();
+        if (!Files.exists(csv)) {
+            rows.append("timestamp,version,seed,frontMatter,threads,buildFlags,").append(String.join(",", columns)).append('\n');
+        }
+        for (Map<String, String> result : results) {
+            rows.append(timestamp).append(',').append(version != null ? version : "dev").append(',')
+                    .append(seed).append(',').append(frontMatter).append(',').append(threads)
+                    .append(",\"").append(String.join(" ", buildFlags)).append('"');
+            for (String column : columns) {
+                rows.append(',').append(result.get(column));
+            }
+            rows.append('\n');
+        }
+
+        Files.createDirectories(csv.getParent());
+        Files.writeString(csv, rows, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("\n📈 Results appended to " + csv);
+    }
+
+    // The build options among the arguments, as they were given
+    private static List<String> buildFlags(Map<String, String> options) {
+        List<String> flags = new ArrayList<>();
+        for (Map.Entry<String, String> option : new TreeMap<>(options).entrySet()) {
+            if (!OWN_OPTIONS.contains(option.getKey())) {
+                flags.add("--" + option.getKey() + (option.getValue().isEmpty() ? "" : "=" + option.getValue()));
+            }
+        }
+        return flags;
+    }
+
+    // --key=value pairs; a bare --key maps to ""
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> tree = Files.walk(root)) {
+            for (Path path : tree.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.jrxna.mongoose.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a synthetic documentation tree in the layout scanDirectory expects:
+ * one directory per section with markdown files inside. The same seed and
+ * settings always produce the same bytes, so corpora can be regenerated
+ * instead of shared.
+ */
+public class CorpusGenerator {
+
+    public enum FrontMatter {
+        /** Title heading and a "Date:" line in the body */
+        NONE,
+        /** Flat key/value front matter */
+        FLAT,
+        /** Nested maps, lists and block scalars */
+        NESTED
+    }
+
+    private static final String[] WORDS = {
+            "asset", "allocation", "archive", "browser", "buffer", "build", "cache", "client", "compression",
+            "directory", "feed", "handler", "hash", "heading", "image", "index", "latency", "manifest",
+            "output", "page", "parser", "pool", "queue", "render", "request", "response", "section", "server",
+            "shard", "sidebar", "sitemap", "stream", "template", "thread", "throughput", "token" };
+
+    private static final LocalDate FIRST_DATE = LocalDate.of(2018, 1, 1);
+    private static final int DATE_RANGE_DAYS = 8 * 365;
+
+    private int sections = 10;
+    private int filesPerSection = 100;
+    private int meanWords = 600;
+    private double sizeSpread = 0.8;
+    private double headingsPerThousandWords = 12;
+    private FrontMatter frontMatter = FrontMatter.FLAT;
+    private long seed = 42;
+
+    public int getSections() { return sections; }
+    public void setSections(int sections) { this.sections = sections; }
+
+    public int getFilesPerSection() { return filesPerSection; }
+    public void setFilesPerSection(int filesPerSection) { this.filesPerSection = filesPerSection; }
+
+    public int getMeanWords() { return meanWords; }
+    public void setMeanWords(int meanWords) { this.meanWords = meanWords; }
+
+    // Sigma of the log-normal page size distribution; 0 makes every page the same size
+    public double getSizeSpread() { return sizeSpread; }
+    public void setSizeSpread(double sizeSpread) { this.sizeSpread = sizeSpread; }
+
+    public double getHeadingsPerThousandWords() { return headingsPerThousandWords; }
+    public void setHeadingsPerThousandWords(double headingsPerThousandWords) { this.headingsPerThousandWords = headingsPerThousandWords; }
+
+    public FrontMatter getFrontMatter() { return frontMatter; }
+    public void setFrontMatter(FrontMatter frontMatter) { this.frontMatter = frontMatter; }
+
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+
+    public int getTotalFiles() {
+        return sections * filesPerSection;
+    }
+
+    /**
+     * Generates the corpus under root and returns the number of bytes
+     * written. Files are generated in parallel; each one has its own seed,
+     * so the output does not depend on scheduling.
+     */
+    public long generate(Path root) throws IOException {
+        AtomicLong bytes = new AtomicLong();
+        try {
+            IntStream.range(0, sections).parallel().forEach(s -> {
+                Path dir = root.resolve(String.format("topic-%03d-%s", s, WORDS[s % WORDS.length]));
+                try {
+                    Files.createDirectories(dir);
+                    for (int f = 0; f < filesPerSection; f++) {
+                        Random random = new Random(seed * 1_000_003L + (long) s * filesPerSection + f);
+                        Path file = dir.resolve(String.format("%s-%05d.md", word(random), f));
+                        byte[] content = page(random).getBytes(StandardCharsets.UTF_8);
+                        Files.write(file, content);
+                        bytes.addAndGet(content.length);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return bytes.get();
+    }
+
+    private String page(Random random) {
+        String title = capitalize(word(random)) + " " + word(random) + " " + word(random);
+        LocalDate date = FIRST_DATE.plusDays(random.nextInt(DATE_RANGE_DAYS));
+        int words = pageWords(random);
+
+        StringBuilder md = new StringBuilder(words * 8);
+        switch (frontMatter) {
+            case NONE -> md.append("# ").append(title).append("\n\nDate: ").append(date).append("\n\n");
+            case FLAT -> md.append("---\ntitle: \"").append(title).append("\"\ndate: \"").append(date)
+                    .append("\"\ntags: ").append(word(random)).append("\n---\n# ").append(title).append("\n\n");
+            case NESTED -> md.append("---\ntitle: \"").append(title).append("\"\ndate: ").append(date)
+                    .append("\nauthor:\n  name: ").append(capitalize(word(random)))
+                    .append("\n  team: ").append(word(random))
+                    .append("\ntags:\n  - ").append(word(random)).append("\n  - ").append(word(random))
+                    .append("\nsummary: |\n  ").append(sentence(random, 12)).append("\n  ")
+                    .append(sentence(random, 10)).append("\n---\n# ").append(title).append("\n\n");
+        }
+
+        double headingChance = Math.min(1.0, headingsPerThousandWords / 1000 * 60);
+        int written = 0;
+        int block = 0;
+        while (written < words) {
+            if (block > 0 && random.nextDouble() < headingChance) {
+                md.append(random.nextInt(4) == 0 ? "### " : "## ")
+                        .append(capitalize(word(random))).append(' ').append(word(random)).append("\n\n");
+            }
+
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                md.append("```java\nvar ").append(word(random)).append(" = ").append(word(random))
+                        .append(".build();\n```\n\n");
+                written += 4;
+            } else if (kind == 1) {
+                int items = 2 + random.nextInt(4);
+                for (int i = 0; i < items; i++) {
+                    md.append("- ").append(sentence(random, 8)).append('\n');
+                }
+                md.append('\n');
+                written += items * 8;
+            } else if (kind == 2) {
+                md.append("| Key | Value |\n|-----|-------|\n");
+                for (int i = 0; i < 3; i++) {
+                    md.append("| `").append(word(random)).append("` | ").append(sentence(random, 5)).append(" |\n");
+                }
+                md.append('\n');
+                written += 18;
+            } else {
+                int length = 40 + random.nextInt(80);
+                md.append(sentence(random, length))
+                        .append(" See https://example.com/").append(word(random))
+                        .append(" and **").append(word(random)).append("**.\n\n");
+                written += length;
+            }
+            block++;
+        }
+        return md.toString();
+    }
+
+    // Log-normal with the configured mean
+    private int pageWords(Random random) {
+        double mu = Math.log(meanWords) - sizeSpread * sizeSpread / 2;
+        double words = Math.exp(mu + sizeSpread * random.nextGaussian());
+        return (int) Math.max(20, Math.min(50_000, words));
+    }
+
+    private String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder(capitalize(word(random)));
+        for (int i = 1; i < words; i++) {
+            sentence.append(' ').append(word(random));
+        }
+        return sentence.append('.').toString();
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
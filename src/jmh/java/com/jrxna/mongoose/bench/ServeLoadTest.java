@@ -0,0 +1,162 @@
+package com.jrxna.mongoose.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Closed-loop load test for `mongoose serve`: a fixed number of clients
+ * request random pages of the site back to back for a while, then latency
+ * percentiles and throughput are printed.
+ *
+ * Run with ./gradlew serveLoadTest -PbenchArgs="--url=http://localhost:4000 --site=output"
+ */
+public class ServeLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1));
+        }
+
+        String url = options.getOrDefault("url", "http://localhost:4000");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "10")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "2")));
+        boolean gzip = options.containsKey("gzip");
+        boolean revalidate = options.containsKey("revalidate");
+        List<String> paths = paths(options.get("site"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newFixedThreadPool(4))
+                .build();
+
+        // Conditional requests need the current ETags, of the same encoding
+        Map<String, String> etags = new HashMap<>();
+        if (revalidate) {
+            for (String path : paths) {
+                HttpResponse<Void> response = client.send(request(url, path, gzip).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                response.headers().firstValue("ETag").ifPresent(etag -> etags.put(path, etag));
+            }
+        }
+
+        System.out.printf("🔨 %d clients, %d pages, %ds (after %ds warm-up)%s%s%n", concurrency, paths.size(),
+                duration.toSeconds(), warmup.toSeconds(), gzip ? ", gzip" : "", revalidate ? ", If-None-Match" : "");
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int c = 0; c < concurrency; c++) {
+            long seed = c;
+            results.add(clients.submit(() -> {
+                Random random = new Random(seed);
+                long[] latencies = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < end) {
+                    String path = paths.get(random.nextInt(paths.size()));
+                    long sent = System.nanoTime();
+                    try {
+                        HttpRequest.Builder request = request(url, path, gzip);
+                        if (etags.containsKey(path)) {
+                            request.header("If-None-Match", etags.get(path));
+                        }
+                        HttpResponse<byte[]> response = client.send(request.build(),
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        long latency = System.nanoTime() - sent;
+                        if (response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                        if (sent >= measureFrom) {
+                            if (count == latencies.length) {
+                                latencies = Arrays.copyOf(latencies, count * 2);
+                            }
+                            latencies[count++] = latency;
+                            bytes.addAndGet(response.body().length);
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+
+        long[] all = new long[0];
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + latencies.length);
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+        }
+        clients.shutdown();
+        Arrays.sort(all);
+
+        double seconds = duration.toNanos() / 1e9;
+        System.out.printf("%n%10s %10s %10s %10s %10s %10s %10s%n",
+                "requests", "req/s", "MB/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        System.out.printf("%10d %10.0f %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                all.length, all.length / seconds, bytes.get() / 1e6 / seconds,
+                percentile(all, 50), percentile(all, 90), percentile(all, 99),
+                all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+        if (errors.get() > 0) {
+            System.out.println("⚠️  " + errors.get() + " failed requests");
+        }
+        System.exit(0);
+    }
+
+    private static HttpRequest.Builder request(String url, String path, boolean gzip) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + path));
+        if (gzip) {
+            request.header("Accept-Encoding", "gzip");
+        }
+        return request;
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    // Every page the server offers, percent-encoded, or just the root without a site
+    private static List<String> paths(String site) throws Exception {
+        if (site == null) {
+            return List.of("/");
+        }
+        Path root = Paths.get(site).toRealPath();
+        List<String> paths = new ArrayList<>();
+        try (Stream<Path> tree = Files.walk(root)) {
+            for (Path file : tree.filter(file -> file.toString().endsWith(".html")).collect(Collectors.toList())) {
+                String path = "/" + root.relativize(file).toString().replace('\\', '/');
+                // Page names keep their source names, spaces included; hidden ones are not served
+                if (!path.contains("/.")) {
+                    paths.add(new URI(null, null, path, null).toASCIIString());
+                }
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+}
@@ -0,0 +1,117 @@
+package com.jrxna.mongoose.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures end-to-end CLI time for a small site: the Spring Boot jar, the
+ * plain launcher, and the launcher with the AppCDS archive. Every run is a
+ * fresh JVM, timed from process start to exit.
+ *
+ * Run with ./gradlew startupBenchmark
+ */
+public class StartupBenchmark {
+
+    private static final String LAUNCHER = "com.jrxna.mongoose.MongooseLauncher";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        Path workDir = Paths.get(options.getOrDefault("work", "build/startup"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "10"));
+        int pages = Integer.parseInt(options.getOrDefault("pages", "50"));
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        Path corpus = workDir.resolve("corpus-" + pages);
+        if (!Files.exists(corpus)) {
+            CorpusGenerator generator = new CorpusGenerator();
+            generator.setSections(Math.max(1, pages / 10));
+            generator.setFilesPerSection(Math.min(10, pages));
+            Files.createDirectories(corpus);
+            generator.generate(corpus);
+        }
+        Path output = workDir.resolve("site");
+        List<String> site = List.of(corpus.toString(), output.toString());
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        if (options.containsKey("boot-jar")) {
+            variants.put("spring boot", concat(List.of(java, "-jar", options.get("boot-jar")), site));
+        }
+        if (options.containsKey("lib")) {
+            String classpath = classpath(Paths.get(options.get("lib")));
+            variants.put("launcher", concat(List.of(java, "-cp", classpath, LAUNCHER), site));
+
+            String archive = options.get("archive");
+            if (archive != null && Files.exists(Paths.get(archive))) {
+                variants.put("launcher + AppCDS", concat(
+                        List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xshare:auto", "-cp", classpath, LAUNCHER),
+                        site));
+            }
+        }
+
+        System.out.printf("%n%-20s %10s %10s %10s%n", "variant", "median ms", "min ms", "max ms");
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            // One untimed run to warm the OS file cache
+            time(variant.getValue(), output);
+
+            long[] millis = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                millis[i] = time(variant.getValue(), output);
+            }
+            Arrays.sort(millis);
+            System.out.printf("%-20s %10d %10d %10d%n", variant.getKey(), millis[runs / 2], millis[0], millis[runs - 1]);
+        }
+    }
+
+    private static long time(List<String> command, Path output) throws IOException, InterruptedException {
+        deleteTree(output);
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        int exit = process.waitFor();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (exit != 0) {
+            throw new IOException(String.join(" ", command) + " exited with " + exit);
+        }
+        return millis;
+    }
+
+    // Sorted, so it matches the class path the archive was recorded with
+    private static String classpath(Path libDir) throws IOException {
+        try (Stream<Path> jars = Files.list(libDir)) {
+            return jars.filter(jar -> jar.toString().endsWith(".jar"))
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.joining(File.pathSeparator));
+        }
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> tree = Files.walk(root)) {
+            for (Path path : tree.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.jrxna.mongoose.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Markdown fixtures shipped in src/jmh/resources/fixtures. They are fixed
+ * files rather than generated text so results stay comparable between
+ * versions.
+ */
+final class Fixtures {
+
+    private Fixtures() {}
+
+    static String read(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".md")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown fixture: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // parseMarkdown reads from disk, so benchmarks work on a real file
+    static Path copyToTempFile(String name) throws IOException {
+        Path file = Files.createTempFile("mongoose-" + name + "-", ".md");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, read(name));
+        return file;
+    }
+}
@@ -0,0 +1,54 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.MarkdownFile;
+import com.vladsch.flexmark.util.ast.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkdownParserBenchmark {
+
+    @Param({ "tables", "autolinks", "deep-headings", "large-frontmatter", "mixed" })
+    public String fixture;
+
+    private MarkdownParserService parser;
+    private Path source;
+    private Document document;
+
+    @Setup
+    public void setUp() throws IOException {
+        parser = new MarkdownParserService();
+        source = Fixtures.copyToTempFile(fixture);
+        document = parser.parseDocument(Fixtures.read(fixture));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+    }
+
+    @Benchmark
+    public MarkdownFile parseMarkdown() throws IOException {
+        MarkdownFile file = new MarkdownFile();
+        file.setFilePath(source.toString());
+        parser.parseMarkdown(file);
+        return file;
+    }
+
+    // Rendering collects the TOC too; there is no separate pass any more
+    @Benchmark
+    public MarkdownFile render() {
+        MarkdownFile file = new MarkdownFile();
+        parser.render(document, file);
+        return file;
+    }
+}
@@ -0,0 +1,99 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.BuildOptions;
+import com.jrxna.mongoose.model.MarkdownFile;
+import com.jrxna.mongoose.model.Section;
+import com.jrxna.mongoose.model.TOCItem;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+
+    private static final int FILES_PER_SECTION = 50;
+
+    // Total number of sidebar entries
+    @Param({ "10", "100", "1000", "10000", "50000" })
+    public int sidebarSize;
+
+    private TemplateService templateService;
+    private List<Section> sections;
+    private NavigationModel navigation;
+    private MarkdownFile page;
+    private String[] outputPaths;
+    private final PageBuffer buffer = new PageBuffer();
+    private final BuildOptions options = new BuildOptions();
+
+    @Setup
+    public void setUp() {
+        templateService = new TemplateService();
+        sections = new ArrayList<>();
+        List<MarkdownFile> all = new ArrayList<>();
+
+        for (int i = 0; i < sidebarSize; i++) {
+            if (i % FILES_PER_SECTION == 0) {
+                sections.add(new Section("Section " + (i / FILES_PER_SECTION)));
+            }
+            MarkdownFile file = new MarkdownFile();
+            file.setFilePath("/docs/section-" + (i / FILES_PER_SECTION) + "/page-" + i + ".md");
+            file.setOutputPath("section-" + (i / FILES_PER_SECTION) + "/page-" + i + ".html");
+            file.setTitle("Page " + i + " about rendering");
+            file.setDate(LocalDate.of(2024, 1, 1).plusDays(i % 365));
+            file.setContent("");
+            file.setHtmlContent(Fixtures.read("mixed").replace("\n", "<br>\n"));
+            file.setTableOfContents(List.of(
+                    new TOCItem("overview", "Overview", 2),
+                    new TOCItem("details", "Details", 3)));
+            sections.get(sections.size() - 1).addFile(file);
+            all.add(file);
+        }
+
+        // A page in the middle, so its section is neither first nor last
+        page = all.get(all.size() / 2);
+        navigation = templateService.buildNavigation(sections);
+        outputPaths = all.stream().map(MarkdownFile::getOutputPath).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public String generatePage() {
+        return templateService.generatePage(page, navigation);
+    }
+
+    // What the build does: UTF-8 straight into a reused buffer
+    @Benchmark
+    public int renderPage() {
+        buffer.reset();
+        templateService.renderPage(page, navigation, options, buffer);
+        return buffer.size();
+    }
+
+    // Includes building the navigation model, as callers passing sections do
+    @Benchmark
+    public String generatePageFromSections() {
+        return templateService.generatePage(page, sections);
+    }
+
+    @Benchmark
+    public NavigationModel buildNavigation() {
+        return templateService.buildNavigation(sections);
+    }
+
+    @Benchmark
+    public int calculateRelativePath() {
+        int length = 0;
+        String from = page.getOutputPath();
+        for (String to : outputPaths) {
+            length += NavigationModel.relativePath(from, to).length();
+        }
+        return length;
+    }
+}
@@ -6,6 +6,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
 import com.jrxna.mongoose.service.SiteGeneratorService;
+import com.jrxna.mongoose.service.SitePreviewer;
+import com.jrxna.mongoose.service.SiteWatcher;
 
 @SpringBootApplication
 public class MongooseApplication {
@@ -15,34 +17,12 @@ public class MongooseApplication {
     }
 
     @Bean
-    public CommandLineRunner run(SiteGeneratorService generator) {
+    public CommandLineRunner run(SiteGeneratorService generator, SiteWatcher watcher, SitePreviewer previewer) {
         return args -> {
-            if (args.length < 1) {
-                System.out.println("Usage: mongoose <input-directory> [output-directory]");
-                System.out.println("\nOptions:");
-                System.out.println("  input-directory   Path to folder containing markdown files");
-                System.out.println("  output-directory  Path for generated site (default: ./output)");
-                System.exit(1);
-            }
-
-            String inputPath = args[0];
-            String outputPath = args.length > 1 ? args[1] : "./output";
-
-            System.out.println("🦡 Mongoose Static Site Generator");
-            System.out.println("=====================================");
-            System.out.println("Input:  " + inputPath);
-            System.out.println("Output: " + outputPath);
-            System.out.println();
-
-            try {
-                generator.generateSite(inputPath, outputPath);
-                System.out.println("\n✅ Site generated successfully!");
-                System.out.println("📁 Open " + outputPath + "/index.html to view your site");
-            } catch (Exception e) {
-                System.err.println("\n❌ Error generating site: " + e.getMessage());
-                e.printStackTrace();
-                System.exit(1);
+            int exitCode = MongooseCli.run(args, generator, watcher, previewer);
+            if (exitCode != 0) {
+                System.exit(exitCode);
             }
         };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,277 @@
+package com.jrxna.mongoose;
+
+import com.jrxna.mongoose.model.BuildOptions;
+import com.jrxna.mongoose.server.StaticServer;
+import com.jrxna.mongoose.service.SiteGeneratorService;
+import com.jrxna.mongoose.service.SitePreviewer;
+import com.jrxna.mongoose.service.SiteWatcher;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command line handling shared by the Spring Boot entry point and
+ * {@link MongooseLauncher}.
+ */
+public final class MongooseCli {
+
+    private MongooseCli() {}
+
+    /**
+     * Runs one command and returns the process exit code.
+     */
+    public static int run(String[] args, SiteGeneratorService generator, SiteWatcher watcher,
+            SitePreviewer previewer) {
+        List<String> paths = positionalArgs(args);
+        BuildOptions options = parseOptions(args);
+
+        if (paths.isEmpty() || options == null) {
+            printUsage();
+            return 1;
+        }
+
+        if (paths.get(0).equals("serve")) {
+            return serve(paths, options);
+        }
+        if (paths.get(0).equals("preview")) {
+            return preview(paths, options, previewer);
+        }
+
+        String inputPath = paths.get(0);
+        String outputPath = paths.size() > 1 ? paths.get(1) : "./output";
+        boolean archive = SiteGeneratorService.isArchive(outputPath);
+        if (archive && options.isWatch()) {
+            System.err.println("❌ --watch needs an output directory, not an archive");
+            return 1;
+        }
+        if (options.isAtomic() && options.isWatch()) {
+            System.err.println("❌ --atomic swaps in full builds and cannot be combined with --watch");
+            return 1;
+        }
+
+        System.out.println("🦡 Mongoose Static Site Generator");
+        System.out.println("=====================================");
+        System.out.println("Input:  " + inputPath);
+        System.out.println("Output: " + outputPath);
+        System.out.println();
+
+        try {
+            generator.generateSite(inputPath, outputPath, options);
+            System.out.println("\n✅ Site generated successfully!");
+            if (archive) {
+                System.out.println("📦 Wrote " + outputPath + ", ready to deploy");
+            } else {
+                System.out.println("📁 Open " + outputPath + "/index.html to view your site");
+            }
+
+            if (options.isWatch()) {
+                watcher.watch(inputPath, outputPath, options);
+            }
+        } catch (Exception e) {
+            System.err.println("\n❌ Error generating site: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Serves an already generated site until the process is stopped.
+     */
+    private static int serve(List<String> paths, BuildOptions options) {
+        String sitePath = paths.size() > 1 ? paths.get(1) : "./output";
+        try {
+            StaticServer server = new StaticServer(Paths.get(sitePath), options.getPort());
+            server.start();
+            System.out.println("🌐 Serving " + server.getResourceCount() + " files from " + sitePath
+                    + " on http://localhost:" + server.getPort() + "/");
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("\n❌ Error serving site: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Renders pages from the sources as they are requested until the
+     * process is stopped.
+     */
+    private static int preview(List<String> paths, BuildOptions options, SitePreviewer previewer) {
+        String inputPath = paths.size() > 1 ? paths.get(1) : ".";
+        try {
+            previewer.preview(inputPath, options);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("\n❌ Error previewing site: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: mongoose <input-directory> [output-directory] [options]");
+        System.out.println("       mongoose serve [site-directory] [--port=N]");
+        System.out.println("       mongoose preview [input-directory] [--port=N]");
+        System.out.println("\nOptions:");
+        System.out.println("  input-directory   Path to folder containing markdown files");
+        System.out.println("  output-directory  Path for generated site (default: ./output); a .zip, .tar or");
+        System.out.println("                    .tar.gz path writes the whole site into that archive instead");
+        System.out.println("  --parallel        Parse and render on all available cores");
+        System.out.println("  --threads=N       Parse and render on N threads");
+        System.out.println("  --incremental     Only rebuild pages affected by changed sources");
+        System.out.println("  --external-css    Link one fingerprinted stylesheet instead of inlining it");
+        System.out.println("  --low-memory      Keep only one page body in memory at a time");
+        System.out.println("  --watch           Serve the site and rebuild it when sources change");
+        System.out.println("  --port=N          Port for --watch, serve and preview (default: 4000)");
+        System.out.println("  --report[=FILE]   Write phase and per-file timings as JSON (default: build-report.json)");
+        System.out.println("  --precompress     Write .gz copies of text files for servers to send as-is");
+        System.out.println("  --search          Add a search box backed by a prebuilt index");
+        System.out.println("  --layout=FILE     Page layout with {{placeholders}} instead of the built-in one");
+        System.out.println("  --nav=fragment    Load the sidebar from one shared file (default: --nav=inline)");
+        System.out.println("  --images          Publish images used by pages under hashed names, with sizes");
+        System.out.println("  --image-widths=W,...  Also write downscaled copies for srcset (implies --images)");
+        System.out.println("  --toc-levels=M-N  Heading levels listed in the table of contents (default: 2-3)");
+        System.out.println("  --sitemap         Write sitemap.xml, split into an index past 50,000 URLs");
+        System.out.println("  --feeds           Write Atom feeds of the newest pages, site-wide and per section");
+        System.out.println("  --base-url=URL    Public address for sitemap and feed links (default: the configured domain)");
+        System.out.println("  --render-cache=DIR    Reuse rendered pages across builds and checkouts");
+        System.out.println("  --render-cache-size=SIZE  Limit for the render cache, e.g. 500M or 2G (default: 1G)");
+        System.out.println("  --io-threads=N    Write pages on N threads while rendering goes on (default: 2)");
+        System.out.println("  --fsync           Flush pages to disk before the build finishes");
+        System.out.println("  --atomic          Build beside the output and swap it in when done, linking unchanged files");
+    }
+
+    private static List<String> positionalArgs(String[] args) {
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                paths.add(arg);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Build options from the --flags among the arguments, or null when one
+     * is not recognised. Also used by the build benchmark.
+     */
+    public static BuildOptions parseOptions(String[] args) {
+        BuildOptions options = new BuildOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            if (arg.equals("--parallel")) {
+                options.setThreads(Runtime.getRuntime().availableProcessors());
+            } else if (arg.equals("--incremental")) {
+                options.setIncremental(true);
+            } else if (arg.equals("--external-css")) {
+                options.setExternalStylesheet(true);
+            } else if (arg.equals("--low-memory")) {
+                options.setLowMemory(true);
+            } else if (arg.equals("--search")) {
+                options.setSearch(true);
+            } else if (arg.equals("--precompress")) {
+                options.setPrecompress(true);
+            } else if (arg.equals("--watch")) {
+                options.setWatch(true);
+            } else if (arg.equals("--report")) {
+                options.setReportPath("build-report.json");
+            } else if (arg.startsWith("--report=")) {
+                options.setReportPath(arg.substring("--report=".length()));
+            } else if (arg.equals("--nav=fragment") || arg.equals("--nav=inline")) {
+                options.setNavigationFragment(arg.equals("--nav=fragment"));
+            } else if (arg.equals("--images")) {
+                options.setImages(true);
+            } else if (arg.startsWith("--image-widths=")) {
+                try {
+                    options.setImageWidths(Arrays.stream(arg.substring("--image-widths=".length()).split(","))
+                            .mapToInt(width -> Integer.parseInt(width.trim()))
+                            .toArray());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                options.setImages(true);
+            } else if (arg.equals("--sitemap")) {
+                options.setSitemap(true);
+            } else if (arg.equals("--feeds")) {
+                options.setFeeds(true);
+            } else if (arg.startsWith("--base-url=")) {
+                options.setBaseUrl(arg.substring("--base-url=".length()));
+            } else if (arg.startsWith("--toc-levels=")) {
+                String[] levels = arg.substring("--toc-levels=".length()).split("-", 2);
+                try {
+                    int min = Integer.parseInt(levels[0].trim());
+                    int max = levels.length > 1 ? Integer.parseInt(levels[1].trim()) : min;
+                    if (min < 1 || max > 6 || min > max) {
+                        return null;
+                    }
+                    options.setTocMinLevel(min);
+                    options.setTocMaxLevel(max);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else if (arg.startsWith("--render-cache=")) {
+                options.setRenderCachePath(arg.substring("--render-cache=".length()));
+            } else if (arg.startsWith("--render-cache-size=")) {
+                long size = parseSize(arg.substring("--render-cache-size=".length()));
+                if (size <= 0) {
+                    return null;
+                }
+                options.setRenderCacheMaxBytes(size);
+            } else if (arg.startsWith("--layout=")) {
+                options.setLayoutPath(arg.substring("--layout=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    options.setThreads(Integer.parseInt(arg.substring("--threads=".length())));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else if (arg.startsWith("--io-threads=")) {
+                try {
+                    options.setIoThreads(Integer.parseInt(arg.substring("--io-threads=".length())));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else if (arg.equals("--fsync")) {
+                options.setFsync(true);
+            } else if (arg.equals("--atomic")) {
+                options.setAtomic(true);
+            } else if (arg.startsWith("--port=")) {
+                try {
+                    options.setPort(Integer.parseInt(arg.substring("--port=".length())));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        return options;
+    }
+
+    // Bytes with an optional K, M or G suffix; -1 when malformed
+    private static long parseSize(String size) {
+        String digits = size.toUpperCase();
+        int shift = 0;
+        if (digits.endsWith("K") || digits.endsWith("M") || digits.endsWith("G")) {
+            shift = switch (digits.charAt(digits.length() - 1)) {
+                case 'K' -> 10;
+                case 'M' -> 20;
+                default -> 30;
+            };
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        try {
+            return Long.parseLong(digits) << shift;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.jrxna.mongoose;
+
+import com.jrxna.mongoose.service.BuildManifestService;
+import com.jrxna.mongoose.service.MarkdownParserService;
+import com.jrxna.mongoose.service.PrecompressionService;
+import com.jrxna.mongoose.service.SearchIndexService;
+import com.jrxna.mongoose.service.SiteGeneratorService;
+import com.jrxna.mongoose.service.SitePreviewer;
+import com.jrxna.mongoose.service.SitemapService;
+import com.jrxna.mongoose.service.SiteWatcher;
+import com.jrxna.mongoose.service.TemplateService;
+
+/**
+ * Fast-start entry point. Wires the services by hand instead of booting a
+ * Spring context, which is most of the wall time of a small build. Pair it
+ * with the AppCDS archive from ./gradlew cdsArchive for the quickest start.
+ */
+public final class MongooseLauncher {
+
+    private MongooseLauncher() {}
+
+    public static void main(String[] args) {
+        MarkdownParserService markdownParser = new MarkdownParserService();
+        TemplateService templateService = new TemplateService();
+        SiteGeneratorService generator = new SiteGeneratorService(markdownParser, templateService,
+                new BuildManifestService(), new PrecompressionService(), new SearchIndexService(),
+                new SitemapService());
+        SiteWatcher watcher = new SiteWatcher(generator);
+        SitePreviewer previewer = new SitePreviewer(markdownParser, templateService);
+
+        int exitCode = MongooseCli.run(args, generator, watcher, previewer);
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.jrxna.mongoose.model;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class BuildManifest {
+    private String settings;
+    private String navigationHash;
+    private String indexSource;
+    private final Map<String, ManifestEntry> entries = new ConcurrentHashMap<>();
+
+    public String getSettings() { return settings; }
+    public void setSettings(String settings) { this.settings = settings; }
+
+    public String getNavigationHash() { return navigationHash; }
+    public void setNavigationHash(String navigationHash) { this.navigationHash = navigationHash; }
+
+    public String getIndexSource() { return indexSource; }
+    public void setIndexSource(String indexSource) { this.indexSource = indexSource; }
+
+    public Collection<ManifestEntry> getEntries() { return entries.values(); }
+
+    public ManifestEntry getEntry(String sourcePath) {
+        return entries.get(sourcePath);
+    }
+
+    public void putEntry(ManifestEntry entry) {
+        entries.put(entry.getSourcePath(), entry);
+    }
+}
@@ -0,0 +1,110 @@
+package com.jrxna.mongoose.model;
+
+public class BuildOptions {
+    private int threads = 1;
+    private boolean incremental = false;
+    private boolean externalStylesheet = false;
+    private boolean lowMemory = false;
+    private boolean watch = false;
+    private int port = 4000;
+    private String reportPath;
+    private boolean precompress = false;
+    private boolean search = false;
+    private String layoutPath;
+    private boolean images = false;
+    private int[] imageWidths = new int[0];
+    private boolean navigationFragment = false;
+    private String renderCachePath;
+    private long renderCacheMaxBytes = 1L << 30;
+    private int tocMinLevel = 2;
+    private int tocMaxLevel = 3;
+    private boolean sitemap = false;
+    private boolean feeds = false;
+    private String baseUrl;
+    private int ioThreads = 2;
+    private boolean fsync = false;
+    private boolean atomic = false;
+
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+
+    public boolean isIncremental() { return incremental; }
+    public void setIncremental(boolean incremental) { this.incremental = incremental; }
+
+    public boolean isExternalStylesheet() { return externalStylesheet; }
+    public void setExternalStylesheet(boolean externalStylesheet) { this.externalStylesheet = externalStylesheet; }
+
+    public boolean isLowMemory() { return lowMemory; }
+    public void setLowMemory(boolean lowMemory) { this.lowMemory = lowMemory; }
+
+    public boolean isWatch() { return watch; }
+    public void setWatch(boolean watch) { this.watch = watch; }
+
+    public int getPort() { return port; }
+    public void setPort(int port) { this.port = port; }
+
+    // Where to write build-report.json, or null for no report
+    public String getReportPath() { return reportPath; }
+    public void setReportPath(String reportPath) { this.reportPath = reportPath; }
+
+    public boolean isPrecompress() { return precompress; }
+    public void setPrecompress(boolean precompress) { this.precompress = precompress; }
+
+    public boolean isSearch() { return search; }
+    public void setSearch(boolean search) { this.search = search; }
+
+    // Page layout file with {{placeholders}}, or null for the built-in one
+    public String getLayoutPath() { return layoutPath; }
+    public void setLayoutPath(String layoutPath) { this.layoutPath = layoutPath; }
+
+    public boolean isImages() { return images; }
+    public void setImages(boolean images) { this.images = images; }
+
+    // Widths of the downscaled copies made for srcset; none by default
+    public int[] getImageWidths() { return imageWidths; }
+    public void setImageWidths(int[] imageWidths) { this.imageWidths = imageWidths; }
+
+    // Pages load the sidebar from one shared file instead of each embedding it
+    public boolean isNavigationFragment() { return navigationFragment; }
+    public void setNavigationFragment(boolean navigationFragment) { this.navigationFragment = navigationFragment; }
+
+    // Directory of rendered pages kept across builds and checkouts, or null for none
+    public String getRenderCachePath() { return renderCachePath; }
+    public void setRenderCachePath(String renderCachePath) { this.renderCachePath = renderCachePath; }
+
+    public long getRenderCacheMaxBytes() { return renderCacheMaxBytes; }
+    public void setRenderCacheMaxBytes(long renderCacheMaxBytes) { this.renderCacheMaxBytes = renderCacheMaxBytes; }
+
+    // Heading levels listed in the table of contents, inclusive
+    public int getTocMinLevel() { return tocMinLevel; }
+    public void setTocMinLevel(int tocMinLevel) { this.tocMinLevel = tocMinLevel; }
+
+    public int getTocMaxLevel() { return tocMaxLevel; }
+    public void setTocMaxLevel(int tocMaxLevel) { this.tocMaxLevel = tocMaxLevel; }
+
+    public boolean isSitemap() { return sitemap; }
+    public void setSitemap(boolean sitemap) { this.sitemap = sitemap; }
+
+    public boolean isFeeds() { return feeds; }
+    public void setFeeds(boolean feeds) { this.feeds = feeds; }
+
+    // Public address sitemaps and feeds link to, or null for the configured domain
+    public String getBaseUrl() { return baseUrl; }
+    public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+
+    // Threads writing pages while others render them
+    public int getIoThreads() { return ioThreads; }
+    public void setIoThreads(int ioThreads) { this.ioThreads = Math.max(1, ioThreads); }
+
+    // Flush written pages to disk before the build reports success
+    public boolean isFsync() { return fsync; }
+    public void setFsync(boolean fsync) { this.fsync = fsync; }
+
+    // Build beside the output directory and swap the result in when done
+    public boolean isAtomic() { return atomic; }
+    public void setAtomic(boolean atomic) { this.atomic = atomic; }
+
+    public boolean isParallel() {
+        return threads > 1;
+    }
+}
@@ -0,0 +1,85 @@
+package com.jrxna.mongoose.model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a build did and where its time went. Phases that run on the worker
+ * pool (parse, render, write, index) are summed over all threads, so with
+ * more than one thread they can add up to more than the wall time.
+ */
+public class BuildReport {
+    private final Map<String, PhaseTiming> phases = new LinkedHashMap<>();
+    private final Map<String, FileTiming> files = new ConcurrentHashMap<>();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private long wallNanos;
+    private int threads = 1;
+    private int sourceFiles;
+    private int parsedFiles;
+    private int generatedPages;
+    private int writerThreads;
+    private int writerPages;
+    private long writerBytes;
+    private long writerNanos;
+
+    // Phases in the order they first ran
+    public synchronized Map<String, PhaseTiming> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    public synchronized void recordPhase(String phase, long nanos, long allocatedBytes) {
+        phases.computeIfAbsent(phase, name -> new PhaseTiming()).add(nanos, allocatedBytes);
+    }
+
+    public long getPhaseNanos(String phase) {
+        PhaseTiming timing = getPhases().get(phase);
+        return timing != null ? timing.getNanos() : 0;
+    }
+
+    public FileTiming fileTiming(String sourcePath) {
+        return files.computeIfAbsent(sourcePath, FileTiming::new);
+    }
+
+    public Collection<FileTiming> getFileTimings() { return files.values(); }
+
+    public List<FileTiming> getSlowestFiles(int limit) {
+        List<FileTiming> slowest = new ArrayList<>(files.values());
+        slowest.sort(Comparator.comparingLong(FileTiming::getTotalNanos).reversed());
+        return slowest.subList(0, Math.min(limit, slowest.size()));
+    }
+
+    public long getBytesWritten() { return bytesWritten.get(); }
+
+    public void addBytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    public long getWallNanos() { return wallNanos; }
+    public void setWallNanos(long wallNanos) { this.wallNanos = wallNanos; }
+
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+
+    public int getSourceFiles() { return sourceFiles; }
+    public void setSourceFiles(int sourceFiles) { this.sourceFiles = sourceFiles; }
+
+    public int getParsedFiles() { return parsedFiles; }
+    public void setParsedFiles(int parsedFiles) { this.parsedFiles = parsedFiles; }
+
+    public int getGeneratedPages() { return generatedPages; }
+    public void setGeneratedPages(int generatedPages) { this.generatedPages = generatedPages; }
+
+    // Pages written by the background writer, and over how long, for throughput
+    public void recordWriter(int threads, int pages, long bytes, long nanos) {
+        this.writerThreads = threads;
+        this.writerPages = pages;
+        this.writerBytes = bytes;
+        this.writerNanos = nanos;
+    }
+
+    public int getWriterThreads() { return writerThreads; }
+    public int getWriterPages() { return writerPages; }
+    public long getWriterBytes() { return writerBytes; }
+    public long getWriterNanos() { return writerNanos; }
+}
@@ -0,0 +1,48 @@
+package com.jrxna.mongoose.model;
+
+/**
+ * An image referenced from markdown, as published: its content-hashed path
+ * under the output directory, its size in pixels and any downscaled
+ * variants. Kept between builds along with the source's size and mtime.
+ */
+public class ContentImage {
+    private final String sourcePath;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final String outputPath;
+    private final int width;
+    private final int height;
+    private final int[] variantWidths;
+    private final String[] variantPaths;
+
+    public ContentImage(String sourcePath, long sourceSize, long sourceModified, String outputPath,
+            int width, int height, int[] variantWidths, String[] variantPaths) {
+        this.sourcePath = sourcePath;
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.outputPath = outputPath;
+        this.width = width;
+        this.height = height;
+        this.variantWidths = variantWidths;
+        this.variantPaths = variantPaths;
+    }
+
+    public String getSourcePath() { return sourcePath; }
+
+    public long getSourceSize() { return sourceSize; }
+
+    public long getSourceModified() { return sourceModified; }
+
+    // Relative to the output directory
+    public String getOutputPath() { return outputPath; }
+
+    // Zero when the format's header could not be read
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    // Ascending, all narrower than width
+    public int[] getVariantWidths() { return variantWidths; }
+
+    public String[] getVariantPaths() { return variantPaths; }
+}
@@ -0,0 +1,28 @@
+package com.jrxna.mongoose.model;
+
+/**
+ * The weighted search terms of one page, as parallel arrays sorted by term.
+ * Kept between incremental builds along with the source hash they came from.
+ */
+public class DocumentTerms {
+    private final String sourcePath;
+    private final String hash;
+    private final String[] terms;
+    private final int[] weights;
+
+    public DocumentTerms(String sourcePath, String hash, String[] terms, int[] weights) {
+        this.sourcePath = sourcePath;
+        this.hash = hash;
+        this.terms = terms;
+        this.weights = weights;
+    }
+
+    public String getSourcePath() { return sourcePath; }
+
+    // Null outside incremental builds
+    public String getHash() { return hash; }
+
+    public String[] getTerms() { return terms; }
+
+    public int[] getWeights() { return weights; }
+}
@@ -0,0 +1,45 @@
+package com.jrxna.mongoose.model;
+
+/**
+ * Time spent on one source file, split by step. A file can be read and
+ * parsed more than once in a build (low-memory mode), so steps accumulate.
+ */
+public class FileTiming {
+    private final String sourcePath;
+    private long readNanos;
+    private long frontMatterNanos;
+    private long parseNanos;
+    private long renderNanos;
+    private long writeNanos;
+    private long allocatedBytes;
+
+    public FileTiming(String sourcePath) {
+        this.sourcePath = sourcePath;
+    }
+
+    public String getSourcePath() { return sourcePath; }
+
+    public long getReadNanos() { return readNanos; }
+    public void addReadNanos(long nanos) { readNanos += nanos; }
+
+    public long getFrontMatterNanos() { return frontMatterNanos; }
+    public void addFrontMatterNanos(long nanos) { frontMatterNanos += nanos; }
+
+    // Flexmark parsing only
+    public long getParseNanos() { return parseNanos; }
+    public void addParseNanos(long nanos) { parseNanos += nanos; }
+
+    // Markdown to HTML, collecting the TOC on the way, plus the page template
+    public long getRenderNanos() { return renderNanos; }
+    public void addRenderNanos(long nanos) { renderNanos += nanos; }
+
+    public long getWriteNanos() { return writeNanos; }
+    public void addWriteNanos(long nanos) { writeNanos += nanos; }
+
+    public long getAllocatedBytes() { return allocatedBytes; }
+    public void addAllocatedBytes(long bytes) { allocatedBytes += bytes; }
+
+    public long getTotalNanos() {
+        return readNanos + frontMatterNanos + parseNanos + renderNanos + writeNanos;
+    }
+}
@@ -0,0 +1,40 @@
+package com.jrxna.mongoose.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ManifestEntry {
+    private String sourcePath;
+    private String hash;
+    private long size;
+    private long lastModified;
+    private String title;
+    private LocalDate date;
+    private String outputPath;
+    private List<TOCItem> tableOfContents = new ArrayList<>();
+
+    public String getSourcePath() { return sourcePath; }
+    public void setSourcePath(String sourcePath) { this.sourcePath = sourcePath; }
+
+    public String getHash() { return hash; }
+    public void setHash(String hash) { this.hash = hash; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public long getLastModified() { return lastModified; }
+    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public LocalDate getDate() { return date; }
+    public void setDate(LocalDate date) { this.date = date; }
+
+    public String getOutputPath() { return outputPath; }
+    public void setOutputPath(String outputPath) { this.outputPath = outputPath; }
+
+    public List<TOCItem> getTableOfContents() { return tableOfContents; }
+    public void setTableOfContents(List<TOCItem> tableOfContents) { this.tableOfContents = tableOfContents; }
+}
@@ -0,0 +1,17 @@
+package com.jrxna.mongoose.model;
+
+public class PhaseTiming {
+    private long nanos;
+    private long allocatedBytes;
+
+    public long getNanos() { return nanos; }
+    public void setNanos(long nanos) { this.nanos = nanos; }
+
+    public long getAllocatedBytes() { return allocatedBytes; }
+    public void setAllocatedBytes(long allocatedBytes) { this.allocatedBytes = allocatedBytes; }
+
+    public void add(long nanos, long allocatedBytes) {
+        this.nanos += nanos;
+        this.allocatedBytes += allocatedBytes;
+    }
+}
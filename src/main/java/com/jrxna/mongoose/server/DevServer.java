@@ -0,0 +1,173 @@
+package com.jrxna.mongoose.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a generated site for local previews, either from disk or from a
+ * {@link PageSource} that renders pages on request. Every HTML page gets
+ * a small script that listens on a server-sent event stream and reloads the
+ * page when {@link #reload()} is called after a rebuild.
+ */
+public class DevServer {
+
+    private static final String EVENTS_PATH = "/__mongoose/livereload";
+
+    private static final String RELOAD_SCRIPT = """
+            <script>
+            new EventSource("%s").onmessage = function () { location.reload(); };
+            </script>
+            """.formatted(EVENTS_PATH);
+
+    static final Map<String, String> CONTENT_TYPES = Map.of(
+            "html", "text/html; charset=utf-8",
+            "css", "text/css; charset=utf-8",
+            "js", "text/javascript; charset=utf-8",
+            "json", "application/json",
+            "xml", "application/xml",
+            "svg", "image/svg+xml",
+            "png", "image/png",
+            "jpg", "image/jpeg",
+            "jpeg", "image/jpeg",
+            "gif", "image/gif");
+
+    private final PageSource pages;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+    private final List<OutputStream> listeners = new CopyOnWriteArrayList<>();
+
+    public DevServer(Path root, int port) throws IOException {
+        this(diskSource(root.toAbsolutePath().normalize()), port);
+    }
+
+    public DevServer(PageSource pages, int port) throws IOException {
+        this.pages = pages;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.createContext(EVENTS_PATH, this::handleEvents);
+        this.server.createContext("/", this::handleFile);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        // Keeps idle connections alive and prunes browsers that went away
+        heartbeat.scheduleAtFixedRate(() -> send(": ping\n\n"), 15, 15, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        heartbeat.shutdownNow();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Tells every open page to reload itself.
+     */
+    public void reload() {
+        send("data: reload\n\n");
+    }
+
+    private void send(String event) {
+        byte[] bytes = event.getBytes(StandardCharsets.UTF_8);
+        for (OutputStream listener : listeners) {
+            try {
+                listener.write(bytes);
+                listener.flush();
+            } catch (IOException e) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    private void handleEvents(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(200, 0);
+
+        // Left open on purpose; the stream is closed when the browser goes away
+        OutputStream body = exchange.getResponseBody();
+        body.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+        body.flush();
+        listeners.add(body);
+    }
+
+    private void handleFile(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath().replaceFirst("^/+", "");
+            if (path.isEmpty() || path.endsWith("/")) {
+                path += "index.html";
+            }
+            byte[] body = pages.read(path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            String extension = extensionOf(path);
+            if (extension.equals("html")) {
+                body = injectReloadScript(new String(body, StandardCharsets.UTF_8));
+            }
+
+            exchange.getResponseHeaders().set("Content-Type",
+                    CONTENT_TYPES.getOrDefault(extension, "application/octet-stream"));
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    // Reads files under the site root; directories serve their index.html
+    private static PageSource diskSource(Path root) {
+        return path -> {
+            Path file = root.resolve(path).normalize();
+            if (!file.startsWith(root)) {
+                return null;
+            }
+            if (Files.isDirectory(file)) {
+                file = file.resolve("index.html");
+            }
+            return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+        };
+    }
+
+    private byte[] injectReloadScript(String html) {
+        int end = html.lastIndexOf("</body>");
+        String page = end < 0
+                ? html + RELOAD_SCRIPT
+                : html.substring(0, end) + RELOAD_SCRIPT + html.substring(end);
+        return page.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String extensionOf(Path file) {
+        return extensionOf(file.getFileName().toString());
+    }
+
+    static String extensionOf(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+}
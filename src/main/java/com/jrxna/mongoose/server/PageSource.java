@@ -0,0 +1,17 @@
+package com.jrxna.mongoose.server;
+
+import java.io.IOException;
+
+/**
+ * Where {@link DevServer} gets the bytes it serves: the files of a generated
+ * site, or pages rendered on request.
+ */
+@FunctionalInterface
+public interface PageSource {
+
+    /**
+     * Returns the resource at a site-relative path such as
+     * {@code guides/setup.html}, or null if there is none.
+     */
+    byte[] read(String path) throws IOException;
+}
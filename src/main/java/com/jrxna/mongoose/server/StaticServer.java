@@ -0,0 +1,302 @@
+package com.jrxna.mongoose.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Production server for a generated site. Everything is read once at
+ * startup: small files are kept in memory, larger ones are streamed from
+ * disk with {@link FileChannel#transferTo}. Responses carry strong ETags,
+ * conditional requests get 304, and a precompressed .gz sidecar is sent
+ * when the client accepts gzip.
+ */
+public class StaticServer {
+
+    // Larger files are not worth holding on the heap
+    private static final long MEMORY_LIMIT = 1024 * 1024;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private final HttpServer server;
+    private final ExecutorService executor = newRequestExecutor();
+    private final Map<String, Resource> resources;
+
+    public StaticServer(Path root, int port) throws IOException {
+        // After --atomic the output path is a link, which Files.walk would not enter
+        this.resources = load(root.toRealPath());
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int getResourceCount() {
+        return resources.size();
+    }
+
+    /**
+     * Handles requests on virtual threads where the JDK has them (21+),
+     * otherwise on a cached pool. Looked up reflectively so the build can
+     * keep targeting Java 17.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static Map<String, Resource> load(Path root) throws IOException {
+        // Hidden files and everything under hidden directories, such as the
+        // .git of an output directory that is a gh-pages worktree, stay private
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                return !dir.equals(root) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (Files.isRegularFile(file) && !isHidden(file)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Map<String, Resource> resources = new HashMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(GZIP_SUFFIX) && Files.exists(file.resolveSibling(
+                    name.substring(0, name.length() - GZIP_SUFFIX.length())))) {
+                // Served as a variant of its source, not on its own
+                continue;
+            }
+
+            Variant identity = Variant.of(file);
+            Path sidecar = file.resolveSibling(name + GZIP_SUFFIX);
+            Variant gzip = Files.isRegularFile(sidecar) ? Variant.of(sidecar) : null;
+
+            String contentType = DevServer.CONTENT_TYPES.getOrDefault(DevServer.extensionOf(file),
+                    "application/octet-stream");
+            String requestPath = "/" + root.relativize(file).toString().replace('\\', '/');
+            resources.put(requestPath, new Resource(contentType, cacheControl(requestPath), identity, gzip));
+        }
+        return resources;
+    }
+
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    // Fingerprinted assets never change under the same name: site.<hash>.css
+    // and the like, and images published as assets/media/<hash>[-<width>w].png
+    private static String cacheControl(String requestPath) {
+        return requestPath.matches(".*\\.[0-9a-f]{10}\\.[a-z]+|/assets/media/[0-9a-f]{10}(-[0-9]+w)?\\.[a-z]+")
+                ? "public, max-age=31536000, immutable"
+                : "no-cache";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            boolean head = method.equals("HEAD");
+            if (!head && !method.equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            Resource resource = resolve(exchange.getRequestURI());
+            if (resource == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            Headers request = exchange.getRequestHeaders();
+            Variant variant = resource.gzip != null && acceptsGzip(request.getFirst("Accept-Encoding"))
+                    ? resource.gzip
+                    : resource.identity;
+
+            Headers response = exchange.getResponseHeaders();
+            response.set("ETag", variant.etag);
+            response.set("Cache-Control", resource.cacheControl);
+            if (resource.gzip != null) {
+                response.set("Vary", "Accept-Encoding");
+            }
+
+            if (matches(request.getFirst("If-None-Match"), variant.etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            response.set("Content-Type", resource.contentType);
+            if (variant == resource.gzip) {
+                response.set("Content-Encoding", "gzip");
+            }
+            if (head) {
+                response.set("Content-Length", Long.toString(variant.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, variant.length);
+            OutputStream body = exchange.getResponseBody();
+            if (variant.content != null) {
+                body.write(variant.content);
+            } else {
+                try (FileChannel channel = FileChannel.open(variant.file, StandardOpenOption.READ)) {
+                    WritableByteChannel target = Channels.newChannel(body);
+                    long position = 0;
+                    while (position < variant.length) {
+                        position += channel.transferTo(position, variant.length - position, target);
+                    }
+                }
+            }
+        }
+    }
+
+    private Resource resolve(URI uri) {
+        String path = uri.getPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        Resource resource = resources.get(path);
+        if (resource == null) {
+            resource = resources.get(path.endsWith("/") ? path + "index.html" : path + "/index.html");
+        }
+        return resource;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // If-None-Match uses weak comparison, so a W/ prefix still matches
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || (tag.startsWith("W/") && tag.substring(2).equals(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Resource {
+        final String contentType;
+        final String cacheControl;
+        final Variant identity;
+        final Variant gzip;
+
+        Resource(String contentType, String cacheControl, Variant identity, Variant gzip) {
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+            this.identity = identity;
+            this.gzip = gzip;
+        }
+    }
+
+    /**
+     * One encoding of a file: its bytes when small enough to keep, otherwise
+     * just where to stream it from.
+     */
+    private static final class Variant {
+        final Path file;
+        final long length;
+        final byte[] content;
+        final String etag;
+
+        private Variant(Path file, long length, byte[] content, String etag) {
+            this.file = file;
+            this.length = length;
+            this.content = content;
+            this.etag = etag;
+        }
+
+        static Variant of(Path file) throws IOException {
+            long length = Files.size(file);
+            MessageDigest digest = sha256();
+            byte[] content = null;
+            if (length <= MEMORY_LIMIT) {
+                content = Files.readAllBytes(file);
+                digest.update(content);
+            } else {
+                try (var in = Files.newInputStream(file)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+            String etag = "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+            return new Variant(file, length, content, etag);
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+}
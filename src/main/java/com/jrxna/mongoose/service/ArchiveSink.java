@@ -0,0 +1,320 @@
+package com.jrxna.mongoose.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the site as one .zip, .tar or .tar.gz file instead of a directory
+ * tree.
+ *
+ * Pages arrive from several threads in whatever order they finish, so they
+ * are appended to a single spool file next to the archive and the archive is
+ * written from it in path order at the end. Together with fixed timestamps,
+ * owners and modes that makes the archive depend on nothing but the site:
+ * the same sources give the same bytes. The timestamp is SOURCE_DATE_EPOCH
+ * when set, as reproducible builds expect, or else 1980-01-02.
+ *
+ * The archive is written under a temporary name and renamed into place, so
+ * a failed build leaves the previous one alone.
+ */
+final class ArchiveSink implements OutputSink {
+
+    enum Format { ZIP, TAR, TAR_GZ }
+
+    // 1980-01-02: zip times start at 1980-01-01, and java.util.zip takes
+    // that first instant for "no time" and stores the local clock instead
+    private static final long DEFAULT_EPOCH_SECONDS = 315_619_200L;
+    private static final int TAR_BLOCK = 512;
+    private static final int TAR_RECORD = 20 * TAR_BLOCK;
+
+    private final Path archive;
+    private final Format format;
+    private final boolean fsync;
+    private final Path spool;
+    private final FileChannel spoolChannel;
+    private final AtomicLong spoolSize = new AtomicLong();
+    private final Map<String, Spooled> entries = new ConcurrentSkipListMap<>();
+    private final long epochSeconds = epochSeconds();
+
+    ArchiveSink(Path archive, boolean fsync) throws IOException {
+        this.archive = archive;
+        this.format = formatOf(archive);
+        this.fsync = fsync;
+        Path dir = archive.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        this.spool = Files.createTempFile(dir, "." + archive.getFileName(), ".spool");
+        this.spoolChannel = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * The archive format named by the file extension, or null for a
+     * directory.
+     */
+    static Format formatOf(Path path) {
+        String name = path.getFileName() != null ? path.getFileName().toString().toLowerCase() : "";
+        if (name.endsWith(".zip")) {
+            return Format.ZIP;
+        }
+        if (name.endsWith(".tar")) {
+            return Format.TAR;
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return Format.TAR_GZ;
+        }
+        return null;
+    }
+
+    @Override
+    public long write(String path, PageBuffer page) throws IOException {
+        // Reserving the range first lets threads append without a lock
+        long offset = spoolSize.getAndAdd(page.size());
+        page.writeTo(spoolChannel, offset);
+        entries.put(path, new Spooled(offset, page.size()));
+        return page.size();
+    }
+
+    @Override
+    public void flush(ExecutorService io) {
+        // Nothing is published before finish()
+    }
+
+    /**
+     * Adds every file under a directory at its path relative to it, for the
+     * output that other steps of the build wrote as files.
+     */
+    void addFiles(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        for (Path file : files) {
+            String path = dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = in.size();
+                long offset = spoolSize.getAndAdd(size);
+                long copied = 0;
+                while (copied < size) {
+                    copied += spoolChannel.transferFrom(in, offset + copied, size - copied);
+                }
+                entries.put(path, new Spooled(offset, size));
+            }
+        }
+    }
+
+    int getEntryCount() { return entries.size(); }
+
+    /**
+     * Writes the archive from the spool and renames it into place. Returns
+     * its size in bytes.
+     */
+    long finish() throws IOException {
+        // Not createTempFile, whose owner-only permissions would carry over to the archive
+        Path temp = archive.resolveSibling("." + archive.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                    64 * 1024)) {
+                if (format == Format.ZIP) {
+                    writeZip(out);
+                } else {
+                    writeTar(format == Format.TAR_GZ ? new GZIPOutputStream(out, 64 * 1024) : out);
+                }
+            }
+            if (fsync) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ)) {
+                    channel.force(true);
+                }
+            }
+            Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return Files.size(archive);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Deletes the spool
+        spoolChannel.close();
+    }
+
+    private void writeZip(OutputStream out) throws IOException {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(Math.max(epochSeconds, DEFAULT_EPOCH_SECONDS), 0,
+                ZoneOffset.UTC);
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, Spooled> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                // Local time without a zone, so the archive does not depend on where it is built
+                zipEntry.setTimeLocal(time);
+                zip.putNextEntry(zipEntry);
+                copySpooled(entry.getValue(), zip);
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private void writeTar(OutputStream out) throws IOException {
+        long written = 0;
+        try (out) {
+            for (Map.Entry<String, Spooled> entry : entries.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                long size = entry.getValue().size;
+                written += writeTarHeader(out, name, size);
+                copySpooled(entry.getValue(), out);
+                written += size + pad(out, size, TAR_BLOCK);
+            }
+
+            // Two empty blocks end the archive; tar reads whole records
+            out.write(new byte[2 * TAR_BLOCK]);
+            written += 2 * TAR_BLOCK;
+            pad(out, written, TAR_RECORD);
+        }
+    }
+
+    /**
+     * Writes a ustar header, preceded by a pax header with the path when it
+     * does not fit. Returns the bytes written.
+     */
+    private long writeTarHeader(OutputStream out, byte[] name, long size) throws IOException {
+        byte[] prefix = new byte[0];
+        if (name.length > 100) {
+            int split = splitPoint(name);
+            if (split < 0) {
+                byte[] record = paxRecord("path", name);
+                out.write(tarHeader(("PaxHeaders/" + Integer.toHexString(Arrays.hashCode(name)))
+                        .getBytes(StandardCharsets.US_ASCII), prefix, record.length, 'x'));
+                out.write(record);
+                long paxLength = TAR_BLOCK + record.length + pad(out, record.length, TAR_BLOCK);
+
+                // Readers without pax support still get the end of the path
+                out.write(tarHeader(Arrays.copyOfRange(name, name.length - 100, name.length), prefix, size, '0'));
+                return paxLength + TAR_BLOCK;
+            }
+            prefix = Arrays.copyOfRange(name, 0, split);
+            name = Arrays.copyOfRange(name, split + 1, name.length);
+        }
+        out.write(tarHeader(name, prefix, size, '0'));
+        return TAR_BLOCK;
+    }
+
+    private byte[] tarHeader(byte[] name, byte[] prefix, long size, char type) {
+        byte[] header = new byte[TAR_BLOCK];
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, epochSeconds);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        System.arraycopy(prefix, 0, header, 345, Math.min(prefix.length, 155));
+
+        // The checksum is taken with its own field as spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    // A '/' that leaves at most 155 bytes before it and 100 after, or -1
+    private static int splitPoint(byte[] name) {
+        for (int i = Math.max(0, name.length - 101); i < Math.min(name.length, 156); i++) {
+            if (name[i] == '/' && i > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // "<length> key=value\n", where the length counts itself
+    private static byte[] paxRecord(String key, byte[] value) {
+        int base = key.length() + value.length + 3;
+        int length = base + String.valueOf(base).length();
+        length = base + String.valueOf(length).length();
+        byte[] head = (length + " " + key + "=").getBytes(StandardCharsets.US_ASCII);
+        byte[] record = new byte[length];
+        System.arraycopy(head, 0, record, 0, head.length);
+        System.arraycopy(value, 0, record, head.length, value.length);
+        record[length - 1] = '\n';
+        return record;
+    }
+
+    // Zero-padded octal digits followed by a NUL, filling the field
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw new IllegalArgumentException("Value too large for tar header: " + value);
+        }
+        digits = "0".repeat(length - 1 - digits.length()) + digits;
+        System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    private static long pad(OutputStream out, long written, int unit) throws IOException {
+        int padding = (int) ((unit - written % unit) % unit);
+        out.write(new byte[padding]);
+        return padding;
+    }
+
+    private void copySpooled(Spooled entry, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = entry.offset;
+        long end = entry.offset + entry.size;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = spoolChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Archive spool ended early: " + spool);
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    private static long epochSeconds() {
+        String epoch = System.getenv("SOURCE_DATE_EPOCH");
+        if (epoch != null) {
+            try {
+                return Math.max(0, Long.parseLong(epoch.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Warning: Ignoring SOURCE_DATE_EPOCH that is not a number: " + epoch);
+            }
+        }
+        return DEFAULT_EPOCH_SECONDS;
+    }
+
+    private static final class Spooled {
+        final long offset;
+        final long size;
+
+        Spooled(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
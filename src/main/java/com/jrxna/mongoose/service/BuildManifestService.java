@@ -0,0 +1,237 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.*;
+import org.springframework.stereotype.Service;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads and writes the manifest an incremental build leaves in the output
+ * directory, and answers which sources changed since it was written.
+ */
+@Service
+public class BuildManifestService {
+
+    public static final String MANIFEST_FILE = ".mongoose-manifest.yml";
+
+    // Bump whenever the manifest layout or the generated HTML changes shape
+    private static final int FORMAT_VERSION = 3;
+
+    // SnakeYAML stops at 3 MB by default, which a site of ten thousand pages outgrows
+    private static final int MAX_MANIFEST_CODE_POINTS = Integer.MAX_VALUE;
+
+    // Watch mode rebuilds over and over; skip re-reading a manifest we wrote ourselves
+    private final Map<Path, CachedManifest> saved = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public BuildManifest load(Path outputDir, String settings) {
+        BuildManifest manifest = new BuildManifest();
+        Path manifestFile = outputDir.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifestFile)) {
+            return manifest;
+        }
+
+        CachedManifest cached = saved.get(manifestFile.toAbsolutePath());
+        try {
+            if (cached != null
+                    && cached.modified.equals(Files.getLastModifiedTime(manifestFile))
+                    && Objects.equals(cached.manifest.getSettings(), settings)) {
+                return cached.manifest;
+            }
+        } catch (IOException e) {
+            // Fall through and read it from disk
+        }
+
+        try (Reader reader = Files.newBufferedReader(manifestFile)) {
+            LoaderOptions loaderOptions = new LoaderOptions();
+            loaderOptions.setCodePointLimit(MAX_MANIFEST_CODE_POINTS);
+            Map<String, Object> data = new Yaml(loaderOptions).load(reader);
+            if (data == null
+                    || !Objects.equals(data.get("version"), FORMAT_VERSION)
+                    || !Objects.equals(data.get("settings"), settings)) {
+                return manifest;
+            }
+
+            manifest.setSettings(settings);
+            manifest.setNavigationHash((String) data.get("navigation"));
+            manifest.setIndexSource((String) data.get("index"));
+
+            List<Map<String, Object>> files = (List<Map<String, Object>>) data.get("files");
+            for (Map<String, Object> file : files) {
+                manifest.putEntry(toEntry(file));
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Ignoring unreadable build manifest: " + e.getMessage());
+            return new BuildManifest();
+        }
+
+        return manifest;
+    }
+
+    public void save(BuildManifest manifest, Path outputDir) throws IOException {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("version", FORMAT_VERSION);
+        data.put("settings", manifest.getSettings());
+        data.put("navigation", manifest.getNavigationHash());
+        data.put("index", manifest.getIndexSource());
+
+        List<ManifestEntry> entries = new ArrayList<>(manifest.getEntries());
+        entries.sort(Comparator.comparing(ManifestEntry::getSourcePath));
+        List<Map<String, Object>> files = new ArrayList<>();
+        for (ManifestEntry entry : entries) {
+            files.add(fromEntry(entry));
+        }
+        data.put("files", files);
+
+        DumperOptions dumperOptions = new DumperOptions();
+        dumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        // Write next to the target and rename, so an interrupted build never
+        // leaves a truncated manifest behind
+        Path manifestFile = outputDir.resolve(MANIFEST_FILE);
+        Path tempFile = outputDir.resolve(MANIFEST_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile)) {
+            new Yaml(dumperOptions).dump(data, writer);
+        }
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+
+        saved.put(manifestFile.toAbsolutePath(),
+                new CachedManifest(manifest, Files.getLastModifiedTime(manifestFile)));
+    }
+
+    /**
+     * Fingerprints the source of a file. The content hash of the previous
+     * entry is reused when size and modification time are unchanged.
+     */
+    public ManifestEntry fingerprint(MarkdownFile file, ManifestEntry previous) throws IOException {
+        Path source = Paths.get(file.getFilePath());
+
+        ManifestEntry entry = new ManifestEntry();
+        entry.setSourcePath(file.getFilePath());
+        entry.setOutputPath(file.getOutputPath());
+        entry.setSize(Files.size(source));
+        entry.setLastModified(Files.getLastModifiedTime(source).toMillis());
+
+        if (previous != null
+                && previous.getSize() == entry.getSize()
+                && previous.getLastModified() == entry.getLastModified()) {
+            entry.setHash(previous.getHash());
+        } else {
+            entry.setHash(hash(Files.readAllBytes(source)));
+        }
+
+        return entry;
+    }
+
+    /**
+     * Copies title, date and TOC from the previous entry into the file when
+     * its source is unchanged. Returns false when the file must be parsed.
+     */
+    public boolean restore(MarkdownFile file, ManifestEntry previous, ManifestEntry current) {
+        if (previous == null || !previous.getHash().equals(current.getHash())) {
+            return false;
+        }
+
+        file.setTitle(previous.getTitle());
+        file.setDate(previous.getDate());
+        file.setTableOfContents(previous.getTableOfContents());
+        record(file, current);
+        return true;
+    }
+
+    public void record(MarkdownFile file, ManifestEntry entry) {
+        entry.setTitle(file.getTitle());
+        entry.setDate(file.getDate());
+        entry.setOutputPath(file.getOutputPath());
+        entry.setTableOfContents(file.getTableOfContents());
+    }
+
+    // Everything the sidebar shows, in display order
+    public String navigationHash(List<Section> sections) {
+        StringBuilder navigation = new StringBuilder();
+        for (Section section : sections) {
+            navigation.append("S\0").append(section.getTitle()).append('\0');
+            for (MarkdownFile file : section.getFiles()) {
+                navigation.append("F\0").append(file.getTitle())
+                        .append('\0').append(file.getOutputPath()).append('\0');
+            }
+        }
+        return hash(navigation.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String hash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ManifestEntry toEntry(Map<String, Object> file) {
+        ManifestEntry entry = new ManifestEntry();
+        entry.setSourcePath((String) file.get("source"));
+        entry.setHash((String) file.get("hash"));
+        entry.setSize(((Number) file.get("size")).longValue());
+        entry.setLastModified(((Number) file.get("modified")).longValue());
+        entry.setTitle((String) file.get("title"));
+        entry.setDate(LocalDate.parse((String) file.get("date")));
+        entry.setOutputPath((String) file.get("output"));
+
+        List<TOCItem> toc = new ArrayList<>();
+        List<Map<String, Object>> items = (List<Map<String, Object>>) file.get("toc");
+        if (items != null) {
+            for (Map<String, Object> item : items) {
+                toc.add(new TOCItem((String) item.get("id"), (String) item.get("text"),
+                        ((Number) item.get("level")).intValue()));
+            }
+        }
+        entry.setTableOfContents(toc);
+        return entry;
+    }
+
+    private Map<String, Object> fromEntry(ManifestEntry entry) {
+        Map<String, Object> file = new LinkedHashMap<>();
+        file.put("source", entry.getSourcePath());
+        file.put("hash", entry.getHash());
+        file.put("size", entry.getSize());
+        file.put("modified", entry.getLastModified());
+        file.put("title", entry.getTitle());
+        file.put("date", entry.getDate().toString());
+        file.put("output", entry.getOutputPath());
+
+        List<Map<String, Object>> toc = new ArrayList<>();
+        for (TOCItem item : entry.getTableOfContents()) {
+            Map<String, Object> tocItem = new LinkedHashMap<>();
+            tocItem.put("id", item.getId());
+            tocItem.put("text", item.getText());
+            tocItem.put("level", item.getLevel());
+            toc.add(tocItem);
+        }
+        file.put("toc", toc);
+        return file;
+    }
+
+    private static final class CachedManifest {
+        final BuildManifest manifest;
+        final FileTime modified;
+
+        CachedManifest(BuildManifest manifest, FileTime modified) {
+            this.manifest = manifest;
+            this.modified = modified;
+        }
+    }
+}
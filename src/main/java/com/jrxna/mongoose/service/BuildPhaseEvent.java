@@ -0,0 +1,21 @@
+package com.jrxna.mongoose.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one phase of a build, e.g. all of parsing. Record with
+ * -XX:StartFlightRecording and look under "Mongoose" in JMC.
+ */
+@Name("com.jrxna.mongoose.BuildPhase")
+@Label("Build Phase")
+@Category("Mongoose")
+class BuildPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Files")
+    int files;
+}
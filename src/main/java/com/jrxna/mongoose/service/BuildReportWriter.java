@@ -0,0 +1,75 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.BuildReport;
+import com.jrxna.mongoose.model.FileTiming;
+import com.jrxna.mongoose.model.PhaseTiming;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes a {@link BuildReport} as build-report.json for dashboards and
+ * scripts. Times are in milliseconds, allocations in bytes.
+ */
+final class BuildReportWriter {
+
+    static final int SLOWEST_FILES = 25;
+
+    private BuildReportWriter() {}
+
+    static void write(BuildReport report, Path file) throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"wallMillis\": ").append(millis(report.getWallNanos())).append(",\n")
+                .append("  \"threads\": ").append(report.getThreads()).append(",\n")
+                .append("  \"sourceFiles\": ").append(report.getSourceFiles()).append(",\n")
+                .append("  \"parsedFiles\": ").append(report.getParsedFiles()).append(",\n")
+                .append("  \"generatedPages\": ").append(report.getGeneratedPages()).append(",\n")
+                .append("  \"bytesWritten\": ").append(report.getBytesWritten()).append(",\n")
+                .append("  \"writer\": {\"threads\": ").append(report.getWriterThreads())
+                .append(", \"pages\": ").append(report.getWriterPages())
+                .append(", \"bytes\": ").append(report.getWriterBytes())
+                .append(", \"millis\": ").append(millis(report.getWriterNanos())).append("},\n");
+
+        json.append("  \"phases\": [");
+        String separator = "\n";
+        for (Map.Entry<String, PhaseTiming> phase : report.getPhases().entrySet()) {
+            json.append(separator)
+                    .append("    {\"name\": ").append(Json.quote(phase.getKey()))
+                    .append(", \"millis\": ").append(millis(phase.getValue().getNanos()))
+                    .append(", \"allocatedBytes\": ").append(phase.getValue().getAllocatedBytes())
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"slowestFiles\": [");
+        separator = "\n";
+        for (FileTiming timing : report.getSlowestFiles(SLOWEST_FILES)) {
+            json.append(separator)
+                    .append("    {\"path\": ").append(Json.quote(timing.getSourcePath()))
+                    .append(", \"totalMillis\": ").append(millis(timing.getTotalNanos()))
+                    .append(", \"readMillis\": ").append(millis(timing.getReadNanos()))
+                    .append(", \"frontMatterMillis\": ").append(millis(timing.getFrontMatterNanos()))
+                    .append(", \"parseMillis\": ").append(millis(timing.getParseNanos()))
+                    .append(", \"renderMillis\": ").append(millis(timing.getRenderNanos()))
+                    .append(", \"writeMillis\": ").append(millis(timing.getWriteNanos()))
+                    .append(", \"allocatedBytes\": ").append(timing.getAllocatedBytes())
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, json);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
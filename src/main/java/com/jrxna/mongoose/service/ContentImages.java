@@ -0,0 +1,429 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.BuildOptions;
+import com.jrxna.mongoose.model.ContentImage;
+import com.jrxna.mongoose.model.MarkdownFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The images of one build. Each image referenced from markdown is published
+ * once, on whichever thread parses the first page that uses it, under
+ * assets/media and named by its content hash. Identical files share one
+ * copy, and files already published under their hash are not written again.
+ *
+ * Incremental builds keep each image's source size and mtime in a cache, so
+ * unchanged images are not even read.
+ */
+final class ContentImages implements ImageResolver {
+
+    static final String MEDIA_DIR = "assets/media";
+    static final String CACHE_FILE = ".mongoose-images.cache";
+    private static final int CACHE_VERSION = 1;
+
+    private static final Set<String> FORMATS = Set.of("png", "jpg", "jpeg", "gif", "webp", "avif", "svg", "bmp");
+
+    // Re-encoded without losing more than pixels; GIFs would lose animation
+    private static final Set<String> SCALABLE = Set.of("png", "jpg", "jpeg");
+
+    static {
+        // Scaling uses Java2D, which must not try to reach a display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+    }
+
+    private final Path inputDir;
+    private final Path outputDir;
+    private final Path mediaDir;
+    private final int[] widths;
+    private final boolean incremental;
+    private final Map<String, ContentImage> previous;
+
+    private final Map<Path, ContentImage> images = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> published = new ConcurrentHashMap<>();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private int inUse;
+
+    ContentImages(Path inputDir, Path outputDir, BuildOptions options) {
+        this.inputDir = inputDir.toAbsolutePath().normalize();
+        this.outputDir = outputDir;
+        this.mediaDir = outputDir.resolve(MEDIA_DIR);
+        this.widths = options.getImageWidths().clone();
+        Arrays.sort(this.widths);
+        this.incremental = options.isIncremental();
+        this.previous = incremental ? loadCache() : Map.of();
+    }
+
+    /**
+     * Whether an image published by the previous build has changed or gone
+     * since, which leaves the pages using it pointing at a stale name.
+     */
+    boolean changedSinceLastBuild() {
+        for (ContentImage image : previous.values()) {
+            if (!unchanged(image)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public ContentImage resolve(MarkdownFile page, String url) throws IOException {
+        Path source = sourceOf(page, url);
+        if (source == null) {
+            return null;
+        }
+        if (!Files.isRegularFile(source)) {
+            System.err.println("Warning: Missing image " + url + " in " + page.getFilePath());
+            return null;
+        }
+
+        try {
+            return images.computeIfAbsent(source, path -> {
+                try {
+                    return publish(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Saves the cache and deletes published files no image uses anymore.
+     * Returns the bytes written by this build.
+     */
+    long finish() throws IOException {
+        Map<String, ContentImage> kept = new HashMap<>();
+        for (ContentImage image : images.values()) {
+            kept.put(image.getSourcePath(), image);
+        }
+        // Pages restored from the manifest were not parsed; their images
+        // stay as long as the sources do
+        for (ContentImage image : previous.values()) {
+            if (!kept.containsKey(image.getSourcePath()) && unchanged(image)) {
+                kept.put(image.getSourcePath(), image);
+            }
+        }
+
+        Set<Path> used = new HashSet<>();
+        for (ContentImage image : kept.values()) {
+            used.add(outputDir.resolve(image.getOutputPath()));
+            for (String variant : image.getVariantPaths()) {
+                used.add(outputDir.resolve(variant));
+            }
+        }
+        if (Files.isDirectory(mediaDir)) {
+            List<Path> files;
+            try (Stream<Path> list = Files.list(mediaDir)) {
+                files = list.collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                if (!used.contains(file) && !file.getFileName().toString().endsWith(PrecompressionService.SUFFIX)) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        if (incremental) {
+            saveCache(kept.values());
+        }
+        inUse = kept.size();
+        return bytesWritten.get();
+    }
+
+    // Images the site uses, once finished
+    int inUse() {
+        return inUse;
+    }
+
+    // The file a relative reference points to inside the input tree, or null
+    private Path sourceOf(MarkdownFile page, String url) {
+        if (url.isEmpty() || url.startsWith("/") || url.startsWith("#") || url.matches("^[a-zA-Z][a-zA-Z0-9+.-]*:.*")) {
+            return null;
+        }
+        int end = url.length();
+        for (char c : new char[] { '?', '#' }) {
+            int at = url.indexOf(c);
+            if (at >= 0 && at < end) {
+                end = at;
+            }
+        }
+
+        try {
+            String path = URLDecoder.decode(url.substring(0, end).replace("+", "%2B"), StandardCharsets.UTF_8);
+            Path source = Paths.get(page.getFilePath()).toAbsolutePath().getParent().resolve(path).normalize();
+            return source.startsWith(inputDir) && FORMATS.contains(extensionOf(source)) ? source : null;
+        } catch (IllegalArgumentException e) {
+            // Bad percent escapes, or characters no path can hold
+            return null;
+        }
+    }
+
+    private ContentImage publish(Path source) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        ContentImage cached = previous.get(source.toString());
+        if (cached != null && unchanged(cached) && Arrays.equals(cached.getVariantWidths(),
+                variantWidths(extensionOf(source), cached.getWidth()))) {
+            return cached;
+        }
+
+        byte[] bytes = Files.readAllBytes(source);
+        String extension = extensionOf(source);
+        // Named by content alone, so identical files under different names
+        // share one copy whichever page reaches them first
+        String name = hash(bytes);
+        String outputPath = MEDIA_DIR + "/" + name + "." + extension;
+        write(outputPath, () -> bytes);
+
+        int[] size = dimensions(bytes);
+        int width = size == null ? 0 : size[0];
+        int height = size == null ? 0 : size[1];
+
+        int[] variantWidths = variantWidths(extension, width);
+        String[] variantPaths = new String[variantWidths.length];
+        BufferedImage[] decoded = new BufferedImage[1];
+        try {
+            for (int v = 0; v < variantWidths.length; v++) {
+                int variantWidth = variantWidths[v];
+                variantPaths[v] = MEDIA_DIR + "/" + name + "-" + variantWidth + "w." + extension;
+                write(variantPaths[v], () -> {
+                    if (decoded[0] == null) {
+                        decoded[0] = ImageIO.read(new ByteArrayInputStream(bytes));
+                    }
+                    return encode(scale(decoded[0], variantWidth, !extension.equals("png")), extension);
+                });
+            }
+        } catch (IOException | RuntimeException e) {
+            // Such as CMYK JPEGs, which ImageIO cannot decode; browsers still show the original
+            System.err.println("Warning: Publishing " + inputDir.relativize(source)
+                    + " without smaller versions, it could not be decoded: " + e.getMessage());
+            variantWidths = new int[0];
+            variantPaths = new String[0];
+        }
+
+        return new ContentImage(source.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                outputPath, width, height, variantWidths, variantPaths);
+    }
+
+    // The configured widths an image of this format and width is scaled to
+    private int[] variantWidths(String extension, int width) {
+        if (!SCALABLE.contains(extension)) {
+            return new int[0];
+        }
+        return Arrays.stream(widths).filter(w -> w > 0 && w < width).toArray();
+    }
+
+    private boolean unchanged(ContentImage image) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(image.getSourcePath()),
+                    BasicFileAttributes.class);
+            if (attributes.size() != image.getSourceSize()
+                    || attributes.lastModifiedTime().toMillis() != image.getSourceModified()) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if (!Files.exists(outputDir.resolve(image.getOutputPath()))) {
+            return false;
+        }
+        for (String variant : image.getVariantPaths()) {
+            if (!Files.exists(outputDir.resolve(variant))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        byte[] get() throws IOException;
+    }
+
+    /**
+     * Writes a content-hashed file once per build, and not at all when a
+     * previous build left it in place. Written to a temporary name first so
+     * a crash cannot leave a truncated file under the final one.
+     */
+    private void write(String outputPath, Content content) throws IOException {
+        Path target = outputDir.resolve(outputPath);
+        try {
+            published.computeIfAbsent(outputPath, path -> {
+                try {
+                    if (!Files.exists(target)) {
+                        Files.createDirectories(target.getParent());
+                        byte[] bytes = content.get();
+                        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+                        Files.write(temp, bytes);
+                        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        bytesWritten.addAndGet(bytes.length);
+                    }
+                    return Boolean.TRUE;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Width and height from the image header, without decoding pixels
+    private static int[] dimensions(byte[] bytes) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Downscales in steps of at most half, which keeps bilinear filtering
+     * from skipping pixels and aliasing.
+     */
+    private static BufferedImage scale(BufferedImage image, int width, boolean opaque) throws IOException {
+        if (image == null) {
+            throw new IOException("Unreadable image");
+        }
+        int height = Math.max(1, (int) Math.round(image.getHeight() * (double) width / image.getWidth()));
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+        BufferedImage current = image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (opaque) {
+                    // JPEG has no alpha; transparent pixels turn white rather than black
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, w, h);
+                }
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, String extension) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, extension.equals("png") ? "png" : "jpeg", out)) {
+            throw new IOException("No image writer for " + extension);
+        }
+        return out.toByteArray();
+    }
+
+    private Map<String, ContentImage> loadCache() {
+        Path cacheFile = outputDir.resolve(CACHE_FILE);
+        Map<String, ContentImage> cache = new HashMap<>();
+        if (!Files.exists(cacheFile)) {
+            return cache;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_VERSION) {
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String sourcePath = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                String outputPath = in.readUTF();
+                int width = in.readInt();
+                int height = in.readInt();
+                int[] variantWidths = new int[in.readInt()];
+                String[] variantPaths = new String[variantWidths.length];
+                for (int v = 0; v < variantWidths.length; v++) {
+                    variantWidths[v] = in.readInt();
+                    variantPaths[v] = in.readUTF();
+                }
+                cache.put(sourcePath, new ContentImage(sourcePath, size, modified, outputPath, width, height,
+                        variantWidths, variantPaths));
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Ignoring unreadable image cache: " + e.getMessage());
+            return new HashMap<>();
+        }
+        return cache;
+    }
+
+    private void saveCache(Collection<ContentImage> images) throws IOException {
+        Path cacheFile = outputDir.resolve(CACHE_FILE);
+        Path tempFile = outputDir.resolve(CACHE_FILE + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(images.size());
+            for (ContentImage image : images) {
+                out.writeUTF(image.getSourcePath());
+                out.writeLong(image.getSourceSize());
+                out.writeLong(image.getSourceModified());
+                out.writeUTF(image.getOutputPath());
+                out.writeInt(image.getWidth());
+                out.writeInt(image.getHeight());
+                out.writeInt(image.getVariantWidths().length);
+                for (int v = 0; v < image.getVariantWidths().length; v++) {
+                    out.writeInt(image.getVariantWidths()[v]);
+                    out.writeUTF(image.getVariantPaths()[v]);
+                }
+            }
+        }
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return HexFormat.of().formatHex(digest, 0, 5);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+}
@@ -0,0 +1,136 @@
+package com.jrxna.mongoose.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes pages as files under the output directory. Each directory is
+ * created once per build, and with fsync on, all files and directories are
+ * flushed together at the end.
+ *
+ * Given the directory of the previous build, a page that came out the same
+ * as there is hard-linked to it instead of written again.
+ */
+final class DirectorySink implements OutputSink {
+
+    private final Path outputDir;
+    private final Path previousDir;
+    private final boolean fsync;
+    private final Map<Path, Boolean> directories = new ConcurrentHashMap<>();
+    private final Queue<Path> written = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger linked = new AtomicInteger();
+    private volatile boolean linking;
+
+    DirectorySink(Path outputDir, boolean fsync) {
+        this(outputDir, null, fsync);
+    }
+
+    DirectorySink(Path outputDir, Path previousDir, boolean fsync) {
+        this.outputDir = outputDir;
+        this.previousDir = previousDir;
+        this.fsync = fsync;
+        this.linking = previousDir != null;
+    }
+
+    @Override
+    public long write(String path, PageBuffer page) throws IOException {
+        Path file = outputDir.resolve(path);
+        Path dir = file.getParent();
+        try {
+            directories.computeIfAbsent(dir, DirectorySink::createDirectories);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (linking && linkUnchanged(file, previousDir.resolve(path), page)) {
+            linked.incrementAndGet();
+            return 0;
+        }
+        page.writeTo(file);
+        if (fsync) {
+            written.add(file);
+        }
+        return page.size();
+    }
+
+    // Pages hard-linked to the previous build rather than written
+    int getLinked() { return linked.get(); }
+
+    @Override
+    public void flush(ExecutorService io) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        List<Callable<Void>> syncs = new ArrayList<>();
+        for (Path file : written) {
+            syncs.add(() -> force(file, false));
+        }
+        for (Path dir : directories.keySet()) {
+            syncs.add(() -> force(dir, true));
+        }
+        try {
+            for (Future<Void> sync : io.invokeAll(syncs)) {
+                sync.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while syncing output", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to sync output: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        // Files are in place as soon as they are written
+    }
+
+    private boolean linkUnchanged(Path file, Path previous, PageBuffer page) {
+        try {
+            if (Files.size(previous) != page.size() || !page.contentEquals(Files.readAllBytes(previous))) {
+                return false;
+            }
+        } catch (IOException e) {
+            // Not in the previous build
+            return false;
+        }
+        try {
+            Files.createLink(file, previous);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            // Across filesystems or without hard links; not worth trying for every page
+            linking = false;
+            return false;
+        }
+    }
+
+    private static Boolean createDirectories(Path dir) {
+        try {
+            Files.createDirectories(dir);
+            return Boolean.TRUE;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Void force(Path path, boolean directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory to sync it
+            if (!directory) {
+                throw e;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.jrxna.mongoose.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the work done on one source file in one pass of a build.
+ */
+@Name("com.jrxna.mongoose.Document")
+@Label("Document")
+@Category("Mongoose")
+class DocumentEvent extends jdk.jfr.Event {
+
+    @Label("Source Path")
+    String path;
+
+    @Label("Pass")
+    String pass;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,63 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.TOCItem;
+import com.vladsch.flexmark.ast.Heading;
+import com.vladsch.flexmark.html.AttributeProvider;
+import com.vladsch.flexmark.html.IndependentAttributeProviderFactory;
+import com.vladsch.flexmark.html.renderer.AttributablePart;
+import com.vladsch.flexmark.html.renderer.LinkResolverContext;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.data.NullableDataKey;
+import com.vladsch.flexmark.util.html.MutableAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the table of contents while headings are rendered, from the id
+ * flexmark gives each of them, so TOC links always match the anchors on the
+ * page. Documents without {@link #HEADINGS} render as before.
+ */
+final class HeadingCollector implements AttributeProvider {
+
+    static final NullableDataKey<Headings> HEADINGS = new NullableDataKey<>("MONGOOSE_PAGE_HEADINGS");
+
+    private final Headings headings;
+
+    private HeadingCollector(Headings headings) {
+        this.headings = headings;
+    }
+
+    @Override
+    public void setAttributes(Node node, AttributablePart part, MutableAttributes attributes) {
+        if (headings == null || !(node instanceof Heading) || part != AttributablePart.NODE) {
+            return;
+        }
+        Heading heading = (Heading) node;
+        String id = attributes.getValue("id");
+        if (heading.getLevel() >= headings.minLevel && heading.getLevel() <= headings.maxLevel && !id.isEmpty()) {
+            headings.items.add(new TOCItem(id, heading.getText().toString(), heading.getLevel()));
+        }
+    }
+
+    /**
+     * The headings of one page within the TOC levels, in document order.
+     */
+    static final class Headings {
+        final int minLevel;
+        final int maxLevel;
+        final List<TOCItem> items = new ArrayList<>();
+
+        Headings(int minLevel, int maxLevel) {
+            this.minLevel = minLevel;
+            this.maxLevel = maxLevel;
+        }
+    }
+
+    static final class Factory extends IndependentAttributeProviderFactory {
+        @Override
+        public AttributeProvider apply(LinkResolverContext context) {
+            return new HeadingCollector(HEADINGS.get(context.getDocument()));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.jrxna.mongoose.service;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Excludes read from .mongooseignore files, in the spirit of .gitignore:
+ * one glob per line, blank lines and # comments skipped. A pattern without a
+ * slash matches names at any depth below its file, one with a slash matches
+ * paths relative to its file's directory, a trailing slash only matches
+ * directories and a leading ! takes a match back. The last matching pattern
+ * wins.
+ */
+final class IgnoreRules {
+
+    static final String FILE_NAME = ".mongooseignore";
+
+    static final IgnoreRules NONE = new IgnoreRules(List.of());
+
+    private final List<Rule> rules;
+
+    private IgnoreRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * These rules plus the ones in the given file, which apply below base,
+     * a path relative to the site root ("" for the root itself).
+     */
+    IgnoreRules with(Path file, String base) throws IOException {
+        List<Rule> combined = new ArrayList<>(rules);
+        for (String line : Files.readAllLines(file)) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean byName = pattern.indexOf('/') < 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                continue;
+            }
+
+            try {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                combined.add(new Rule(matcher, base, byName, directoryOnly, negated));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid pattern in " + file + ": " + line, e);
+            }
+        }
+        return new IgnoreRules(combined);
+    }
+
+    /**
+     * Whether the entry at the given root-relative path is excluded.
+     */
+    boolean ignores(String relativePath, String name, boolean directory) {
+        boolean ignored = false;
+        for (Rule rule : rules) {
+            if (rule.directoryOnly && !directory) {
+                continue;
+            }
+            String target = rule.byName
+                    ? name
+                    : rule.base.isEmpty() ? relativePath : relativePath.substring(rule.base.length() + 1);
+            if (rule.matcher.matches(Path.of(target))) {
+                ignored = !rule.negated;
+            }
+        }
+        return ignored;
+    }
+
+    private static final class Rule {
+        final PathMatcher matcher;
+        final String base;
+        final boolean byName;
+        final boolean directoryOnly;
+        final boolean negated;
+
+        Rule(PathMatcher matcher, String base, boolean byName, boolean directoryOnly, boolean negated) {
+            this.matcher = matcher;
+            this.base = base;
+            this.byName = byName;
+            this.directoryOnly = directoryOnly;
+            this.negated = negated;
+        }
+    }
+}
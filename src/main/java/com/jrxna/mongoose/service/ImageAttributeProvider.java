@@ -0,0 +1,85 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.ContentImage;
+import com.vladsch.flexmark.ast.Image;
+import com.vladsch.flexmark.html.AttributeProvider;
+import com.vladsch.flexmark.html.IndependentAttributeProviderFactory;
+import com.vladsch.flexmark.html.renderer.AttributablePart;
+import com.vladsch.flexmark.html.renderer.LinkResolverContext;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.data.NullableDataKey;
+import com.vladsch.flexmark.util.html.MutableAttributes;
+
+import java.util.Map;
+
+/**
+ * Points {@code <img>} tags at published images and adds their size,
+ * responsive variants and lazy loading. Documents without
+ * {@link #IMAGES} render as before.
+ */
+final class ImageAttributeProvider implements AttributeProvider {
+
+    static final NullableDataKey<PageImages> IMAGES = new NullableDataKey<>("MONGOOSE_PAGE_IMAGES");
+
+    private final PageImages page;
+
+    private ImageAttributeProvider(PageImages page) {
+        this.page = page;
+    }
+
+    @Override
+    public void setAttributes(Node node, AttributablePart part, MutableAttributes attributes) {
+        if (page == null || !(node instanceof Image)
+                || (part != AttributablePart.LINK && part != AttributablePart.NODE)) {
+            return;
+        }
+        ContentImage image = page.images.get(((Image) node).getUrl().unescape());
+        if (image == null) {
+            return;
+        }
+
+        attributes.replaceValue("src", link(image.getOutputPath()));
+        if (image.getWidth() > 0) {
+            attributes.replaceValue("width", Integer.toString(image.getWidth()));
+            attributes.replaceValue("height", Integer.toString(image.getHeight()));
+        }
+        if (image.getVariantWidths().length > 0) {
+            StringBuilder srcset = new StringBuilder();
+            for (int v = 0; v < image.getVariantWidths().length; v++) {
+                srcset.append(link(image.getVariantPaths()[v])).append(' ')
+                        .append(image.getVariantWidths()[v]).append("w, ");
+            }
+            srcset.append(link(image.getOutputPath())).append(' ').append(image.getWidth()).append('w');
+            attributes.replaceValue("srcset", srcset);
+            attributes.replaceValue("sizes", "(max-width: " + image.getWidth() + "px) 100vw, "
+                    + image.getWidth() + "px");
+        }
+        attributes.replaceValue("loading", "lazy");
+        attributes.replaceValue("decoding", "async");
+    }
+
+    private String link(String outputPath) {
+        return NavigationModel.relativePath(page.outputPath, outputPath);
+    }
+
+    /**
+     * The images of one page by their reference, and where the page is
+     * written, which links are relative to.
+     */
+    static final class PageImages {
+        final String outputPath;
+        final Map<String, ContentImage> images;
+
+        PageImages(String outputPath, Map<String, ContentImage> images) {
+            this.outputPath = outputPath;
+            this.images = images;
+        }
+    }
+
+    static final class Factory extends IndependentAttributeProviderFactory {
+        @Override
+        public AttributeProvider apply(LinkResolverContext context) {
+            return new ImageAttributeProvider(IMAGES.get(context.getDocument()));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.ContentImage;
+import com.jrxna.mongoose.model.MarkdownFile;
+
+import java.io.IOException;
+
+/**
+ * Publishes the images a page references while it is parsed.
+ */
+@FunctionalInterface
+public interface ImageResolver {
+
+    /**
+     * Returns the published image for a reference as written in the page,
+     * or null to leave the reference as it is.
+     */
+    ContentImage resolve(MarkdownFile page, String url) throws IOException;
+}
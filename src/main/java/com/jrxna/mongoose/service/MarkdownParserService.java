@@ -1,13 +1,18 @@
 package com.jrxna.mongoose.service;
 
+import com.jrxna.mongoose.model.BuildOptions;
+import com.jrxna.mongoose.model.ContentImage;
+import com.jrxna.mongoose.model.FileTiming;
 import com.jrxna.mongoose.model.MarkdownFile;
-import com.jrxna.mongoose.model.TOCItem;
 import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.ast.Image;
 import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
 import com.vladsch.flexmark.ext.tables.TablesExtension;
 import com.vladsch.flexmark.ext.autolink.AutolinkExtension;
 import com.vladsch.flexmark.util.data.MutableDataSet;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
 import com.vladsch.flexmark.html.HtmlRenderer;
 import org.springframework.stereotype.Service;
 import org.yaml.snakeyaml.Yaml;
@@ -16,17 +21,31 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
 public class MarkdownParserService {
 
+    // Parser and HtmlRenderer are immutable and safe to share between threads;
+    // SnakeYAML's Yaml is not, so every thread gets its own instance.
     private final Parser parser;
     private final HtmlRenderer renderer;
-    private final Yaml yaml;
+    private final ThreadLocal<Yaml> yaml;
+
+    // Plain scalars SnakeYAML resolves to something other than a string:
+    // null, booleans, and anything that may be a number or a timestamp
+    private static final Pattern NON_STRING_SCALAR = Pattern.compile(
+            "~|null|Null|NULL|true|True|TRUE|false|False|FALSE|yes|Yes|YES|no|No|NO|on|On|ON|off|Off|OFF"
+                    + "|[-+.0-9].*|<<|=");
+    private static final Pattern ISO_DATE = Pattern.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}");
+
+    // Heading levels that go into the TOC; set per build by configure()
+    private volatile int tocMinLevel = 2;
+    private volatile int tocMaxLevel = 3;
 
     public MarkdownParserService() {
         MutableDataSet options = new MutableDataSet();
@@ -34,69 +53,274 @@ public class MarkdownParserService {
                 TablesExtension.create(),
                 AutolinkExtension.create()));
 
-        // Enable heading anchor IDs
+        // Enable heading anchor IDs, unique within a page
         options.set(HtmlRenderer.GENERATE_HEADER_ID, true);
         options.set(HtmlRenderer.RENDER_HEADER_ID, true);
+        options.set(HtmlRenderer.HEADER_ID_GENERATOR_RESOLVE_DUPES, true);
 
         this.parser = Parser.builder(options).build();
-        this.renderer = HtmlRenderer.builder(options).build();
-        this.yaml = new Yaml();
+        this.renderer = HtmlRenderer.builder(options)
+                .attributeProviderFactory(new ImageAttributeProvider.Factory())
+                .attributeProviderFactory(new HeadingCollector.Factory())
+                .build();
+        this.yaml = ThreadLocal.withInitial(Yaml::new);
+    }
+
+    /**
+     * Applies the build options that shape rendered pages. Called before
+     * every build.
+     */
+    public void configure(BuildOptions options) {
+        tocMinLevel = options.getTocMinLevel();
+        tocMaxLevel = options.getTocMaxLevel();
     }
 
     public void parseMarkdown(MarkdownFile file) throws IOException {
+        parseMarkdown(file, new FileTiming(file.getFilePath()));
+    }
+
+    public void parseMarkdown(MarkdownFile file, FileTiming timing) throws IOException {
+        parseMarkdown(file, timing, null);
+    }
+
+    /**
+     * Parses the file and adds the time taken by each step to the timing.
+     * Images the page references are published through the resolver, if
+     * one is given, and the page links to what it returns.
+     */
+    public void parseMarkdown(MarkdownFile file, FileTiming timing, ImageResolver images) throws IOException {
+        parseMarkdown(file, timing, images, null);
+    }
+
+    /**
+     * As above, taking HTML and TOC from the render cache when it has the
+     * body already. Front matter is read either way, as it is cheap and the
+     * title may fall back to the file name. Pages with published images
+     * link them relative to where they are written, so those bypass it.
+     */
+    void parseMarkdown(MarkdownFile file, FileTiming timing, ImageResolver images, RenderCache cache)
+            throws IOException {
+        long start = System.nanoTime();
         String content = Files.readString(Paths.get(file.getFilePath()));
+        long now = System.nanoTime();
+        timing.addReadNanos(now - start);
+        start = now;
 
-        // Extract frontmatter
-        Map<String, Object> frontmatter = extractFrontmatter(content);
+        // Locate frontmatter, first H1 title and Date line in one pass
+        SourceLayout layout = SourceLayout.scan(content);
 
         // Set title and date from frontmatter or defaults
-        if (frontmatter.containsKey("title")) {
-            file.setTitle((String) frontmatter.get("title"));
+        Map<String, Object> frontmatter = extractFrontmatter(content, layout);
+        applyFrontmatter(file, frontmatter);
+        now = System.nanoTime();
+        timing.addFrontMatterNanos(now - start);
+        start = now;
+
+        // Flexmark parses a view of the body, so the front matter is never
+        // copied; the body is, once, for search and the render cache
+        BasedSequence body = BasedSequence.of(content).subSequence(layout.bodyStart, layout.bodyEnd);
+        file.setContent(body.toString());
+
+        String key = null;
+        if (cache != null && images == null) {
+            key = cache.key(file.getContent());
+            RenderCache.Entry cached = cache.get(key);
+            if (cached != null) {
+                file.setHtmlContent(cached.html);
+                file.setTableOfContents(cached.tableOfContents);
+                timing.addParseNanos(System.nanoTime() - start);
+                return;
+            }
+        }
+
+        Document document = parser.parse(body);
+        if (images != null) {
+            document.set(ImageAttributeProvider.IMAGES, resolveImages(document, file, images));
+        }
+        now = System.nanoTime();
+        timing.addParseNanos(now - start);
+        start = now;
+
+        // Parse markdown to HTML, collecting the TOC on the way
+        render(document, file);
+        timing.addRenderNanos(System.nanoTime() - start);
+
+        if (key != null) {
+            cache.put(key, file.getHtmlContent(), file.getTableOfContents());
+        }
+    }
+
+    void render(Document document, MarkdownFile file) {
+        HeadingCollector.Headings headings = new HeadingCollector.Headings(tocMinLevel, tocMaxLevel);
+        document.set(HeadingCollector.HEADINGS, headings);
+        file.setHtmlContent(renderer.render(document));
+        file.setTableOfContents(headings.items);
+    }
+
+    /**
+     * Everything besides the body that shapes the HTML and TOC of a page,
+     * for keying rendered pages. Update it along with the parser options.
+     */
+    String renderSettings() {
+        String flexmark = Parser.class.getPackage().getImplementationVersion();
+        return "flexmark " + (flexmark != null ? flexmark : "unknown")
+                + "; tables, autolink, header ids; toc h" + tocMinLevel + "-h" + tocMaxLevel;
+    }
+
+    /**
+     * Reads only what sorting and navigation need: title and date. Content,
+     * HTML and TOC are left untouched.
+     */
+    public void parseMetadata(MarkdownFile file) throws IOException {
+        parseMetadata(file, new FileTiming(file.getFilePath()));
+    }
+
+    public void parseMetadata(MarkdownFile file, FileTiming timing) throws IOException {
+        long start = System.nanoTime();
+        String content = Files.readString(Paths.get(file.getFilePath()));
+        long now = System.nanoTime();
+        timing.addReadNanos(now - start);
+
+        applyFrontmatter(file, extractFrontmatter(content, SourceLayout.scan(content)));
+        timing.addFrontMatterNanos(System.nanoTime() - now);
+    }
+
+    private void applyFrontmatter(MarkdownFile file, Map<String, Object> frontmatter) {
+        Object title = frontmatter.get("title");
+        if (title != null) {
+            file.setTitle(String.valueOf(title));
         } else {
             file.setTitle(generateTitleFromFilename(file.getFilePath()));
         }
 
-        if (frontmatter.containsKey("date")) {
-            file.setDate(parseDate((String) frontmatter.get("date")));
+        Object date = frontmatter.get("date");
+        if (date instanceof Date) {
+            // SnakeYAML resolves unquoted ISO dates to timestamps at UTC midnight
+            file.setDate(((Date) date).toInstant().atZone(ZoneOffset.UTC).toLocalDate());
+        } else if (date != null) {
+            file.setDate(parseDate(String.valueOf(date)));
         } else {
             file.setDate(LocalDate.now());
         }
+    }
 
-        // Remove frontmatter from content
-        String markdownContent = removeFrontmatter(content);
+    private Map<String, Object> extractFrontmatter(String content, SourceLayout layout) {
+        if (layout.frontmatterEnd < 0) {
+            return Map.of();
+        }
 
-        // Remove first H1 title and Date line from content
-        markdownContent = removeHeaderAndDate(markdownContent);
+        Map<String, Object> flat = parseFlatFrontmatter(content, layout.frontmatterStart, layout.frontmatterEnd);
+        if (flat != null) {
+            return flat;
+        }
 
-        file.setContent(markdownContent);
+        try {
+            Map<String, Object> parsed = yaml.get().load(content.substring(layout.frontmatterStart, layout.frontmatterEnd));
+            if (parsed != null) {
+                return parsed;
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Failed to parse frontmatter: " + e.getMessage());
+        }
+
+        return Map.of();
+    }
 
-        // Parse markdown to HTML
-        Document document = parser.parse(markdownContent);
-        String html = renderer.render(document);
-        file.setHtmlContent(html);
+    /**
+     * Parses frontmatter made only of {@code key: value} lines with plain or
+     * simply quoted values. Returns null for anything else (nesting, lists,
+     * block scalars, anchors, escapes, comments after values, plain values
+     * that are not strings to YAML) so the caller can hand it to SnakeYAML
+     * instead.
+     */
+    private Map<String, Object> parseFlatFrontmatter(String content, int start, int end) {
+        Map<String, Object> values = new HashMap<>();
+
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = content.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd > end) {
+                lineEnd = end;
+            }
+            int next = lineEnd + 1;
+
+            // Trailing whitespace, including the \r of CRLF files
+            while (lineEnd > lineStart && content.charAt(lineEnd - 1) <= ' ') {
+                lineEnd--;
+            }
+
+            if (lineEnd == lineStart || content.charAt(lineStart) == '#') {
+                lineStart = next;
+                continue;
+            }
 
-        // Generate table of contents
-        file.setTableOfContents(generateTOC(document));
+            char first = content.charAt(lineStart);
+            if (first <= ' ' || "-?:&*!|>'\"%@`{[".indexOf(first) >= 0) {
+                return null;
+            }
+
+            int colon = content.indexOf(": ", lineStart);
+            if (colon < 0 || colon >= lineEnd) {
+                return null;
+            }
+
+            String key = content.substring(lineStart, colon).trim();
+            Object value = parseFlatValue(content, colon + 2, lineEnd);
+            if (value == null) {
+                return null;
+            }
+
+            values.put(key, value);
+            lineStart = next;
+        }
+
+        return values;
     }
 
-    private Map<String, Object> extractFrontmatter(String content) {
-        Pattern pattern = Pattern.compile("^---\\s*\\n(.*?)\\n---\\s*\\n", Pattern.DOTALL);
-        Matcher matcher = pattern.matcher(content);
+    private Object parseFlatValue(String content, int start, int end) {
+        while (start < end && content.charAt(start) <= ' ') {
+            start++;
+        }
+        if (start == end) {
+            return null;
+        }
 
-        if (matcher.find()) {
-            String yamlContent = matcher.group(1);
-            try {
-                return yaml.load(yamlContent);
-            } catch (Exception e) {
-                System.err.println("Warning: Failed to parse frontmatter: " + e.getMessage());
+        char first = content.charAt(start);
+        if (first == '"' || first == '\'') {
+            if (end - start < 2 || content.charAt(end - 1) != first) {
+                return null;
+            }
+            String value = content.substring(start + 1, end - 1);
+            if (first == '"') {
+                // Escape sequences are left to the real parser
+                return value.indexOf('"') < 0 && value.indexOf('\\') < 0 ? value : null;
             }
+            // Inside single quotes, '' stands for one quote
+            return value.replace("''", "").indexOf('\'') < 0 ? value.replace("''", "'") : null;
         }
 
-        return new HashMap<>();
+        if ("[]{}|>&*!%@`".indexOf(first) >= 0) {
+            return null;
+        }
+
+        String value = content.substring(start, end);
+        if (value.contains(" #")) {
+            return null;
+        }
+        if (NON_STRING_SCALAR.matcher(value).matches()) {
+            // Dates are common enough to resolve here, as SnakeYAML would
+            return ISO_DATE.matcher(value).matches() ? parseFlatDate(value) : null;
+        }
+        return value;
     }
 
-    private String removeFrontmatter(String content) {
-        return content.replaceFirst("^---\\s*\\n.*?\\n---\\s*\\n", "");
+    // Midnight UTC, as SnakeYAML reads an unquoted date; null if not a real one
+    private Date parseFlatDate(String value) {
+        try {
+            return Date.from(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
 
     private String generateTitleFromFilename(String filepath) {
@@ -117,42 +341,126 @@ public class MarkdownParserService {
         }
     }
 
-    private List<TOCItem> generateTOC(Document document) {
-        List<TOCItem> items = new ArrayList<>();
+    private ImageAttributeProvider.PageImages resolveImages(Document document, MarkdownFile file,
+            ImageResolver images) throws IOException {
+        Map<String, ContentImage> resolved = new HashMap<>();
+        for (Node node : document.getDescendants()) {
+            if (node instanceof Image) {
+                String url = ((Image) node).getUrl().unescape();
+                if (!resolved.containsKey(url)) {
+                    resolved.put(url, images.resolve(file, url));
+                }
+            }
+        }
+        return new ImageAttributeProvider.PageImages(file.getOutputPath(), resolved);
+    }
+
+    // Package-private, like render(), so the benchmarks in src/jmh can exercise the render path
+    Document parseDocument(String markdown) {
+        return parser.parse(markdown);
+    }
 
-        document.getDescendants().forEach(node -> {
-            if (node instanceof com.vladsch.flexmark.ast.Heading) {
-                com.vladsch.flexmark.ast.Heading heading = (com.vladsch.flexmark.ast.Heading) node;
-                int level = heading.getLevel();
+    /**
+     * Offsets into a markdown source: the YAML between the frontmatter
+     * fences, and the body left after the first H1 title and Date line.
+     */
+    private static final class SourceLayout {
+        int frontmatterStart = -1;
+        int frontmatterEnd = -1;
+        int bodyStart;
+        int bodyEnd;
+
+        static SourceLayout scan(String content) {
+            SourceLayout layout = new SourceLayout();
+            int length = content.length();
+            int pos = 0;
+
+            // Frontmatter: a --- line, the YAML, and a closing --- line
+            int open = content.startsWith("---") ? content.indexOf('\n') + 1 : 0;
+            if (open == 0 || !content.substring(3, open).isBlank()) {
+                open = -1;
+            }
+            if (open >= 0) {
+                int lineStart = open;
+                while (lineStart < length) {
+                    int close = fenceEnd(content, lineStart);
+                    if (close >= 0 && lineStart > open) {
+                        layout.frontmatterStart = open;
+                        layout.frontmatterEnd = lineStart - 1;
+                        pos = close;
+                        break;
+                    }
+                    int lineEnd = content.indexOf('\n', lineStart);
+                    if (lineEnd < 0) {
+                        break;
+                    }
+                    lineStart = lineEnd + 1;
+                }
+            }
 
-                if (level == 2 || level == 3) {
-                    String text = heading.getText().toString();
-                    String id = generateId(text);
-                    items.add(new TOCItem(id, text, level));
+            // First H1 (# Title) and the newlines after it
+            if (pos + 1 < length && content.charAt(pos) == '#'
+                    && (content.charAt(pos + 1) == ' ' || content.charAt(pos + 1) == '\t')) {
+                int lineEnd = content.indexOf('\n', pos);
+                if (lineEnd >= 0) {
+                    pos = skipNewlines(content, lineEnd);
                 }
             }
-        });
 
-        return items;
-    }
+            pos = skipWhitespace(content, pos);
 
-    private String generateId(String text) {
-        return text.toLowerCase()
-                .replaceAll("[^a-z0-9\\s-]", "")
-                .replaceAll("\\s+", "-");
-    }
+            int end = length;
+            while (end > pos && content.charAt(end - 1) <= ' ') {
+                end--;
+            }
 
-    private String removeHeaderAndDate(String content) {
-        // Remove first H1 (# Title) and any following whitespace
-        content = content.replaceFirst("^#\\s+.*?\\n+", "");
+            // Date line (Date: ...) and the newlines after it
+            if (content.startsWith("Date:", pos)) {
+                int lineEnd = content.indexOf('\n', pos);
+                if (lineEnd >= 0 && lineEnd < end) {
+                    pos = skipWhitespace(content, skipNewlines(content, lineEnd));
+                }
+            }
+            // Keep the final line break so flexmark sees a terminated last line
+            if (end < length && content.charAt(end) == '\n') {
+                end++;
+            }
 
-        // Remove any leading whitespace
-        content = content.trim();
+            layout.bodyStart = pos;
+            layout.bodyEnd = end;
+            return layout;
+        }
+
+        /**
+         * Offset after a "---" fence starting at pos, or -1 if there is none.
+         * Like the frontmatter pattern this replaces, blank lines after the
+         * fence belong to it.
+         */
+        private static int fenceEnd(String content, int pos) {
+            if (!content.startsWith("---", pos)) {
+                return -1;
+            }
+            int end = -1;
+            for (int i = pos + 3; i < content.length() && content.charAt(i) <= ' '; i++) {
+                if (content.charAt(i) == '\n') {
+                    end = i + 1;
+                }
+            }
+            return end;
+        }
 
-        // Remove Date line (Date: ...)
-        content = content.replaceFirst("^Date:\\s*.*?\\n+", "");
+        private static int skipNewlines(String content, int pos) {
+            while (pos < content.length() && content.charAt(pos) == '\n') {
+                pos++;
+            }
+            return pos;
+        }
 
-        // Remove any remaining leading whitespace
-        return content.trim() + "\n";
+        private static int skipWhitespace(String content, int pos) {
+            while (pos < content.length() && content.charAt(pos) <= ' ') {
+                pos++;
+            }
+            return pos;
+        }
     }
-}
\ No newline at end of file
+}
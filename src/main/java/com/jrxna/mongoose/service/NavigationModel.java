@@ -0,0 +1,291 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.MarkdownFile;
+import com.jrxna.mongoose.model.Section;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable snapshot of the sidebar, built once per build after sorting.
+ *
+ * A link only depends on whether it stays in the viewer's directory and, if
+ * not, on the viewer's depth. The sidebar with every section closed is
+ * therefore rendered once per depth, and a page only renders the sections it
+ * opens, marks active or shares a directory with. Those are cached per
+ * section and directory, so every page is a handful of appends. All of it is
+ * kept as UTF-8, so those appends are plain byte copies.
+ */
+public final class NavigationModel {
+
+    private static final byte[] SECTION_START = utf8("                <div class=\"sidebar-section\">\n");
+    private static final byte[] DETAILS_OPEN = utf8("                    <details open>\n");
+    private static final byte[] DETAILS_CLOSED = utf8("                    <details>\n");
+    private static final byte[] SECTION_END = utf8("""
+                                    </ul>
+                                </details>
+                            </div>
+            """);
+    private static final byte[] ACTIVE = utf8(" active");
+
+    private final List<SectionNav> sections = new ArrayList<>();
+    private final Map<String, int[]> positions = new HashMap<>();
+    private final Map<String, List<Integer>> sectionsByDirectory = new HashMap<>();
+
+    private final Map<Integer, ClosedSidebar> closedByDepth = new ConcurrentHashMap<>();
+    private final Map<String, SectionLinks> linksByDirectory = new ConcurrentHashMap<>();
+    private volatile String fragmentPath;
+
+    private NavigationModel(List<Section> sections) {
+        for (int s = 0; s < sections.size(); s++) {
+            Section section = sections.get(s);
+            List<MarkdownFile> files = section.getFiles();
+
+            String[] outputPaths = new String[files.size()];
+            String[] titles = new String[files.size()];
+            for (int f = 0; f < files.size(); f++) {
+                MarkdownFile file = files.get(f);
+                outputPaths[f] = file.getOutputPath();
+                titles[f] = file.getTitle();
+                positions.putIfAbsent(file.getFilePath(), new int[] { s, f });
+
+                List<Integer> shared = sectionsByDirectory.computeIfAbsent(directoryOf(file.getOutputPath()),
+                        dir -> new ArrayList<>());
+                if (shared.isEmpty() || shared.get(shared.size() - 1) != s) {
+                    shared.add(s);
+                }
+            }
+
+            this.sections.add(new SectionNav(section.getTitle(), outputPaths, titles));
+        }
+    }
+
+    public static NavigationModel build(List<Section> sections) {
+        return new NavigationModel(sections);
+    }
+
+    /**
+     * Appends the sidebar as seen from the given page: its section open and
+     * its own link marked active.
+     */
+    public void appendSidebar(PageBuffer html, MarkdownFile file) {
+        String fromDir = directoryOf(file.getOutputPath());
+        int depth = depthOf(file.getOutputPath());
+
+        int[] position = positions.get(file.getFilePath());
+        int currentSection = position != null ? position[0] : -1;
+
+        // Special case: if this is index.html, open the first section
+        if (file.getOutputPath().equals("index.html") && !sections.isEmpty()) {
+            currentSection = 0;
+        }
+
+        TreeSet<Integer> rendered = new TreeSet<>();
+        if (currentSection >= 0) {
+            rendered.add(currentSection);
+        }
+        if (position != null) {
+            rendered.add(position[0]);
+        }
+        if (depth > 0) {
+            rendered.addAll(sectionsByDirectory.getOrDefault(fromDir, List.of()));
+        }
+
+        ClosedSidebar closed = closedByDepth.computeIfAbsent(depth, this::renderClosed);
+        int cursor = 0;
+        for (int s : rendered) {
+            html.write(closed.html, cursor, closed.starts[s] - cursor);
+            cursor = closed.ends[s];
+
+            appendSection(html, s, s == currentSection, fromDir, depth,
+                    position != null && position[0] == s ? position[1] : -1);
+        }
+        html.write(closed.html, cursor, closed.html.length - cursor);
+    }
+
+    /**
+     * Appends only the section the given page belongs to, open and with the
+     * page marked active: what a page shows before the shared sidebar
+     * fragment has loaded.
+     */
+    public void appendCurrentSection(PageBuffer html, MarkdownFile file) {
+        int[] position = positions.get(file.getFilePath());
+        int current = position != null ? position[0] : -1;
+        if (file.getOutputPath().equals("index.html") && !sections.isEmpty()) {
+            current = 0;
+        }
+        if (current < 0) {
+            return;
+        }
+
+        appendSection(html, current, true, directoryOf(file.getOutputPath()), depthOf(file.getOutputPath()),
+                position != null && position[0] == current ? position[1] : -1);
+    }
+
+    // One section as seen from a directory, with the link at active marked
+    private void appendSection(PageBuffer html, int s, boolean open, String fromDir, int depth, int active) {
+        SectionLinks links = linksFor(s, fromDir, depth);
+        html.write(SECTION_START)
+                .write(open ? DETAILS_OPEN : DETAILS_CLOSED)
+                .write(sections.get(s).header);
+        if (active >= 0) {
+            int offset = links.activeOffsets[active];
+            html.write(links.html, 0, offset)
+                    .write(ACTIVE)
+                    .write(links.html, offset, links.html.length - offset);
+        } else {
+            html.write(links.html);
+        }
+        html.write(SECTION_END);
+    }
+
+    /**
+     * The whole sidebar with every section closed and links relative to the
+     * site root, for pages to load once and share.
+     */
+    public byte[] getFragment() {
+        return closedByDepth.computeIfAbsent(0, this::renderClosed).html;
+    }
+
+    /**
+     * Where the fragment is published. Named by content, so browsers can
+     * cache it for good and a new sidebar gets a new name.
+     */
+    public String getFragmentPath() {
+        String path = fragmentPath;
+        if (path == null) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(getFragment());
+                path = "assets/nav/sidebar." + HexFormat.of().formatHex(digest, 0, 5) + ".html";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+            fragmentPath = path;
+        }
+        return path;
+    }
+
+    private ClosedSidebar renderClosed(int depth) {
+        PageBuffer html = new PageBuffer();
+        int[] starts = new int[sections.size()];
+        int[] ends = new int[sections.size()];
+
+        for (int s = 0; s < sections.size(); s++) {
+            starts[s] = html.size();
+            // No section lives in a directory that does not exist, so every
+            // link takes the depth-relative form
+            html.write(SECTION_START)
+                    .write(DETAILS_CLOSED)
+                    .write(sections.get(s).header)
+                    .write(renderLinks(sections.get(s), null, depth).html)
+                    .write(SECTION_END);
+            ends[s] = html.size();
+        }
+
+        return new ClosedSidebar(html.toByteArray(), starts, ends);
+    }
+
+    private SectionLinks linksFor(int section, String fromDir, int depth) {
+        return linksByDirectory.computeIfAbsent(section + "\0" + fromDir,
+                key -> renderLinks(sections.get(section), fromDir, depth));
+    }
+
+    private SectionLinks renderLinks(SectionNav section, String fromDir, int depth) {
+        PageBuffer html = new PageBuffer(256 * section.outputPaths.length);
+        int[] activeOffsets = new int[section.outputPaths.length];
+
+        for (int f = 0; f < section.outputPaths.length; f++) {
+            html.write("                            <li class=\"note-item\"><a href=\"")
+                    .write(relativePath(fromDir, depth, section.outputPaths[f]))
+                    .write("\" class=\"note-link");
+            activeOffsets[f] = html.size();
+            html.write("\">")
+                    .write(section.titles[f])
+                    .write("</a></li>\n");
+        }
+
+        return new SectionLinks(html.toByteArray(), activeOffsets);
+    }
+
+    /**
+     * Relative link from one output path to another. Pages in the same
+     * directory link by file name; anything else goes up to the root first.
+     */
+    public static String relativePath(String fromPath, String toPath) {
+        return relativePath(directoryOf(fromPath), depthOf(fromPath), toPath);
+    }
+
+    private static String relativePath(String fromDir, int depth, String toPath) {
+        int slash = toPath.lastIndexOf('/');
+
+        // Same directory
+        if (directoryOf(toPath).equals(fromDir)) {
+            return slash < 0 ? toPath : toPath.substring(slash + 1);
+        }
+
+        // From root to subdirectory
+        if (depth == 0) {
+            return toPath;
+        }
+
+        // Anywhere else - go up to root, then down
+        return "../".repeat(depth) + toPath;
+    }
+
+    private static String directoryOf(String outputPath) {
+        int slash = outputPath.lastIndexOf('/');
+        return slash < 0 ? "" : outputPath.substring(0, slash);
+    }
+
+    private static int depthOf(String outputPath) {
+        int depth = 0;
+        for (int i = 0; i < outputPath.length(); i++) {
+            if (outputPath.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class SectionNav {
+        final byte[] header;
+        final String[] outputPaths;
+        final String[] titles;
+
+        SectionNav(String title, String[] outputPaths, String[] titles) {
+            this.header = utf8("                        <summary class=\"sidebar-title\">" + title + "</summary>\n"
+                    + "                        <ul class=\"note-list\">\n");
+            this.outputPaths = outputPaths;
+            this.titles = titles;
+        }
+    }
+
+    private static final class SectionLinks {
+        final byte[] html;
+        final int[] activeOffsets;
+
+        SectionLinks(byte[] html, int[] activeOffsets) {
+            this.html = html;
+            this.activeOffsets = activeOffsets;
+        }
+    }
+
+    private static final class ClosedSidebar {
+        final byte[] html;
+        final int[] starts;
+        final int[] ends;
+
+        ClosedSidebar(byte[] html, int[] starts, int[] ends) {
+            this.html = html;
+            this.starts = starts;
+            this.ends = ends;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.jrxna.mongoose.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Where {@link PageWriter} puts rendered pages: files in the output
+ * directory, or entries of one archive.
+ */
+interface OutputSink extends Closeable {
+
+    /**
+     * Stores a page under its path relative to the site root, with '/' as
+     * separator, and returns the bytes written. Called from several I/O
+     * threads at once.
+     */
+    long write(String path, PageBuffer page) throws IOException;
+
+    /**
+     * Called once every page has been written, with the I/O threads still
+     * available for any work left.
+     */
+    void flush(ExecutorService io) throws IOException;
+
+    /**
+     * Releases what the sink holds; after a failed build, drops what it has
+     * not published yet.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,148 @@
+package com.jrxna.mongoose.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Growable UTF-8 byte buffer that pages are rendered into. Text is encoded
+ * as it is appended, so a page never exists as one big String; keep one per
+ * thread and {@link #reset()} it between pages.
+ */
+public final class PageBuffer {
+
+    static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private byte[] bytes;
+    private int size;
+
+    public PageBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PageBuffer(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    public PageBuffer write(byte[] data) {
+        return write(data, 0, data.length);
+    }
+
+    public PageBuffer write(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    public PageBuffer write(CharSequence text) {
+        return write(text, 0, text.length());
+    }
+
+    /**
+     * Appends characters start to end of the text as UTF-8. Unpaired
+     * surrogates become '?', as with {@link String#getBytes}.
+     */
+    public PageBuffer write(CharSequence text, int start, int end) {
+        ensureCapacity(end - start);
+        int i = start;
+
+        // Markup is mostly ASCII; stay in this loop while it is
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            bytes[size++] = (byte) c;
+            i++;
+        }
+
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            ensureCapacity(4 + end - i);
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | c >> 6);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < end ? text.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int cp = Character.toCodePoint(c, low);
+                    bytes[size++] = (byte) (0xF0 | cp >> 18);
+                    bytes[size++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | cp & 0x3F);
+                    i++;
+                } else {
+                    bytes[size++] = '?';
+                }
+            } else {
+                bytes[size++] = (byte) (0xE0 | c >> 12);
+                bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Grows to the largest page it has held and stays there
+    public int capacity() {
+        return bytes.length;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public boolean contentEquals(byte[] other) {
+        return Arrays.equals(bytes, 0, size, other, 0, other.length);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Writes the contents to a file, replacing it, straight from the buffer.
+     */
+    public void writeTo(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Writes the contents at a position of an open channel, which several
+     * threads may write to at once.
+     */
+    public void writeTo(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.jrxna.mongoose.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered pages of the preview server, least recently used first, evicted
+ * once their total size goes over a byte budget.
+ *
+ * Every invalidation starts a new generation. A page rendered from sources
+ * read before that is not stored, so a slow render cannot put back a page
+ * that was invalidated while it ran.
+ */
+final class PageCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, byte[]> pages = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long generation;
+
+    PageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized byte[] get(String path) {
+        return pages.get(path);
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Stores a page rendered during the given generation. Pages larger than
+     * the whole budget are not kept.
+     */
+    synchronized void put(String path, byte[] page, long renderedIn) {
+        if (renderedIn != generation || page.length > maxBytes) {
+            return;
+        }
+        byte[] previous = pages.put(path, page);
+        bytes += page.length - (previous == null ? 0 : previous.length);
+
+        Iterator<Map.Entry<String, byte[]>> eldest = pages.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized void invalidate(String path) {
+        byte[] page = pages.remove(path);
+        if (page != null) {
+            bytes -= page.length;
+        }
+        generation++;
+    }
+
+    synchronized void clear() {
+        pages.clear();
+        bytes = 0;
+        generation++;
+    }
+
+    synchronized int size() {
+        return pages.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,92 @@
+package com.jrxna.mongoose.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page layout compiled once into UTF-8 segments and the holes between
+ * them. Holes are written as {{name}}; rendering copies the segments and
+ * asks the caller to fill in each hole.
+ */
+final class PageTemplate {
+
+    enum Hole {
+        TITLE("title"),
+        SITE_NAME("site_name"),
+        ROOT("root"),
+        STYLESHEET("stylesheet"),
+        SEARCH_HEAD("search_head"),
+        SEARCH_BOX("search_box"),
+        SIDEBAR("sidebar"),
+        DATE("date"),
+        CONTENT("content"),
+        TOC("toc");
+
+        final String name;
+
+        Hole(String name) {
+            this.name = name;
+        }
+
+        static Hole named(String name) {
+            for (Hole hole : values()) {
+                if (hole.name.equals(name)) {
+                    return hole;
+                }
+            }
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    interface HoleWriter {
+        void write(Hole hole, PageBuffer out);
+    }
+
+    // segments[i] comes before holes[i]; the last segment ends the page
+    private final byte[][] segments;
+    private final Hole[] holes;
+
+    private PageTemplate(byte[][] segments, Hole[] holes) {
+        this.segments = segments;
+        this.holes = holes;
+    }
+
+    /**
+     * Splits a layout at its holes. Unknown hole names are rejected so a typo
+     * does not silently drop part of every page.
+     */
+    static PageTemplate compile(String layout) {
+        List<byte[]> segments = new ArrayList<>();
+        List<Hole> holes = new ArrayList<>();
+
+        int start = 0;
+        int open;
+        while ((open = layout.indexOf("{{", start)) >= 0) {
+            int close = layout.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed {{ in layout at offset " + open);
+            }
+            String name = layout.substring(open + 2, close).trim();
+            Hole hole = Hole.named(name);
+            if (hole == null) {
+                throw new IllegalArgumentException("Unknown layout placeholder {{" + name + "}}");
+            }
+            segments.add(layout.substring(start, open).getBytes(StandardCharsets.UTF_8));
+            holes.add(hole);
+            start = close + 2;
+        }
+        segments.add(layout.substring(start).getBytes(StandardCharsets.UTF_8));
+
+        return new PageTemplate(segments.toArray(new byte[0][]), holes.toArray(new Hole[0]));
+    }
+
+    void render(PageBuffer out, HoleWriter writer) {
+        for (int i = 0; i < holes.length; i++) {
+            out.write(segments[i]);
+            writer.write(holes[i], out);
+        }
+        out.write(segments[holes.length]);
+    }
+}
@@ -0,0 +1,172 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.BuildReport;
+import com.jrxna.mongoose.model.FileTiming;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes rendered pages on its own I/O threads, so rendering goes on while
+ * the filesystem catches up.
+ *
+ * Pages are rendered into buffers borrowed from a fixed pool, and a buffer
+ * returns to the pool once its page is on disk. That bounds the pages in
+ * flight: when the disk falls behind, renderers wait in {@link #acquire()}.
+ * Where the pages end up is up to the {@link OutputSink}.
+ *
+ * In low-memory mode the pool has one buffer beyond the renderers' and
+ * drops buffers a large page grew, so pages are not held on to after
+ * they are written.
+ */
+final class PageWriter implements AutoCloseable {
+
+    // Per I/O thread, so a slow write does not stall the renderers at once
+    private static final int BUFFERS_PER_THREAD = 8;
+
+    private final ExecutorService io;
+    private final int ioThreads;
+    private final BlockingQueue<PageBuffer> buffers;
+    private final int bufferCount;
+    private final boolean lowMemory;
+    private final OutputSink sink;
+    private final BuildReport report;
+
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final AtomicInteger pages = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong firstWriteNanos = new AtomicLong();
+
+    PageWriter(OutputSink sink, int ioThreads, int renderThreads, boolean lowMemory, BuildReport report) {
+        this.ioThreads = ioThreads;
+        this.bufferCount = lowMemory ? renderThreads + 1 : ioThreads * BUFFERS_PER_THREAD + renderThreads;
+        this.lowMemory = lowMemory;
+        this.buffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(new PageBuffer());
+        }
+        this.sink = sink;
+        this.report = report;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.io = Executors.newFixedThreadPool(ioThreads, task -> {
+            Thread thread = new Thread(task, "mongoose-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * An empty buffer to render a page into. Blocks while every buffer is
+     * waiting to be written.
+     */
+    PageBuffer acquire() throws IOException {
+        checkFailure();
+        try {
+            PageBuffer buffer = buffers.take();
+            buffer.reset();
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to write", e);
+        }
+    }
+
+    /**
+     * Hands back a buffer that will not be written, as when rendering into
+     * it failed. Every acquired buffer must end up here or in write().
+     */
+    void release(PageBuffer page) {
+        recycle(page);
+    }
+
+    /**
+     * Queues the page for writing under its path relative to the site root.
+     * The buffer belongs to the writer from here on.
+     */
+    void write(String path, PageBuffer page, FileTiming timing) throws IOException {
+        try {
+            checkFailure();
+            firstWriteNanos.compareAndSet(0, System.nanoTime());
+            io.execute(() -> writePage(path, page, timing));
+        } catch (IOException | RuntimeException e) {
+            recycle(page);
+            throw e;
+        }
+    }
+
+    private void writePage(String path, PageBuffer page, FileTiming timing) {
+        try {
+            if (failure.get() != null) {
+                return;
+            }
+            PhaseTimer timer = new PhaseTimer();
+            long written = sink.write(path, page);
+            long nanos = timer.record(report, "write");
+            if (timing != null) {
+                timing.addWriteNanos(nanos);
+            }
+
+            report.addBytesWritten(written);
+            bytes.addAndGet(written);
+            pages.incrementAndGet();
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        } catch (RuntimeException e) {
+            // Would otherwise only reach the executor and the page go missing
+            failure.compareAndSet(null, new IOException(e.getMessage(), e));
+        } finally {
+            recycle(page);
+        }
+    }
+
+    private void recycle(PageBuffer page) {
+        buffers.add(lowMemory && page.capacity() > PageBuffer.DEFAULT_CAPACITY ? new PageBuffer() : page);
+    }
+
+    /**
+     * Waits for every queued page and lets the sink finish up, such as
+     * flushing the pages to disk. Rethrows the first failed write.
+     */
+    void finish() throws IOException {
+        try {
+            // Every buffer back in the pool means nothing is left in flight
+            List<PageBuffer> drained = new ArrayList<>(bufferCount);
+            for (int i = 0; i < bufferCount; i++) {
+                drained.add(buffers.take());
+            }
+            buffers.addAll(drained);
+            checkFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing pages", e);
+        }
+        sink.flush(io);
+        long first = firstWriteNanos.get();
+        report.recordWriter(ioThreads, pages.get(), bytes.get(), first != 0 ? System.nanoTime() - first : 0);
+    }
+
+    /**
+     * Stops the I/O threads. Pages still queued after a failed build are
+     * dropped.
+     */
+    @Override
+    public void close() {
+        io.shutdownNow();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw new IOException("Failed to write output: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.BuildReport;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures one step on the current thread: elapsed time and, where the JVM
+ * supports it, bytes allocated by this thread.
+ */
+final class PhaseTimer {
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    private final long startNanos = System.nanoTime();
+    private final long startAllocated = allocatedBytes();
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    long allocated() {
+        return allocatedBytes() - startAllocated;
+    }
+
+    /**
+     * Adds the step to a phase of the report and returns its duration.
+     */
+    long record(BuildReport report, String phase) {
+        long nanos = elapsedNanos();
+        report.recordPhase(phase, nanos, allocated());
+        return nanos;
+    }
+
+    static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,209 @@
+package com.jrxna.mongoose.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes gzip sidecars (page.html.gz next to page.html) for the text files
+ * of a generated site, so servers can send them without compressing on
+ * every request.
+ */
+@Service
+public class PrecompressionService {
+
+    public static final String SUFFIX = ".gz";
+
+    // Files found not worth a sidecar, so unchanged ones are not compressed again
+    static final String SKIPPED_FILE = ".mongoose-precompress.cache";
+    private static final int CACHE_VERSION = 1;
+
+    private static final Set<String> COMPRESSIBLE = Set.of("html", "css", "js", "json", "xml", "svg", "txt");
+
+    // Smaller files fit in a packet or two either way
+    private static final long MIN_SIZE = 1024;
+
+    // A sidecar has to save at least this share of the original to be kept
+    private static final double MIN_SAVINGS = 0.10;
+
+    /**
+     * Compresses every text file under the output directory, on the pool when
+     * one is given. A sidecar carries its source's modification time, and
+     * files that would not gain from one are remembered with theirs, so
+     * files that did not change since the last build are skipped. Returns
+     * the number of bytes written.
+     */
+    public long precompress(Path outputDir, ForkJoinPool pool) throws IOException {
+        // Resolved first, as Files.walk does not enter an output path that is a link
+        Path root = outputDir.toRealPath();
+        List<Path> files;
+        try (Stream<Path> tree = Files.walk(root)) {
+            files = tree.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        Map<String, Long> skippedBefore = loadSkipped(root);
+        Map<String, Long> skipped = new ConcurrentHashMap<>();
+
+        AtomicInteger written = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        Runnable compressAll = () -> {
+            Stream<Path> stream = pool != null ? files.parallelStream() : files.stream();
+            stream.forEach(file -> {
+                try {
+                    long size = compress(file, root.relativize(file).toString(), skippedBefore, skipped);
+                    if (size > 0) {
+                        written.incrementAndGet();
+                        bytes.addAndGet(size);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to compress " + file, e);
+                }
+            });
+        };
+
+        try {
+            if (pool != null) {
+                pool.submit(compressAll).get();
+            } else {
+                compressAll.run();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing output", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw new IOException("Failed to compress output", e.getCause());
+        }
+
+        saveSkipped(root, skipped);
+        System.out.println("   Precompressed " + written.get() + " files");
+        return bytes.get();
+    }
+
+    /**
+     * Brings the sidecar of one file up to date and returns the bytes
+     * written, or 0 when nothing was written. Files that get no sidecar are
+     * added to skipped with their modification time.
+     */
+    private long compress(Path file, String path, Map<String, Long> skippedBefore, Map<String, Long> skipped)
+            throws IOException {
+        String name = file.getFileName().toString();
+
+        // Sidecars whose source is gone
+        if (name.endsWith(SUFFIX)) {
+            Path source = file.resolveSibling(name.substring(0, name.length() - SUFFIX.length()));
+            if (isCompressible(source) && !Files.exists(source)) {
+                Files.deleteIfExists(file);
+            }
+            return 0;
+        }
+        if (!isCompressible(file)) {
+            return 0;
+        }
+
+        Path sidecar = file.resolveSibling(name + SUFFIX);
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        FileTime modified = attributes.lastModifiedTime();
+        if (attributes.size() < MIN_SIZE) {
+            Files.deleteIfExists(sidecar);
+            return 0;
+        }
+        if (Long.valueOf(modified.toMillis()).equals(skippedBefore.get(path))) {
+            skipped.put(path, modified.toMillis());
+            return 0;
+        }
+        if (Files.exists(sidecar) && Files.getLastModifiedTime(sidecar).equals(modified)) {
+            return 0;
+        }
+
+        byte[] content = Files.readAllBytes(file);
+        byte[] compressed = gzip(content);
+        if (compressed.length > content.length * (1 - MIN_SAVINGS)) {
+            Files.deleteIfExists(sidecar);
+            skipped.put(path, modified.toMillis());
+            return 0;
+        }
+
+        Files.write(sidecar, compressed);
+        Files.setLastModifiedTime(sidecar, modified);
+        return compressed.length;
+    }
+
+    private Map<String, Long> loadSkipped(Path root) {
+        Path cacheFile = root.resolve(SKIPPED_FILE);
+        Map<String, Long> skipped = new HashMap<>();
+        if (!Files.exists(cacheFile)) {
+            return skipped;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_VERSION) {
+                return skipped;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                skipped.put(path, in.readLong());
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Ignoring unreadable precompression cache: " + e.getMessage());
+            return new HashMap<>();
+        }
+        return skipped;
+    }
+
+    private void saveSkipped(Path root, Map<String, Long> skipped) throws IOException {
+        Path cacheFile = root.resolve(SKIPPED_FILE);
+        if (skipped.isEmpty()) {
+            Files.deleteIfExists(cacheFile);
+            return;
+        }
+        Path tempFile = root.resolve(SKIPPED_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(skipped.size());
+            for (Map.Entry<String, Long> entry : skipped.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private boolean isCompressible(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSIBLE.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    private byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+}
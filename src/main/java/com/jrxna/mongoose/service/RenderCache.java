@@ -0,0 +1,291 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.TOCItem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rendered markdown bodies kept across builds, checkouts and machines.
+ *
+ * An entry is named by the hash of the body it was rendered from and of
+ * everything else that shapes the HTML: parser settings and Mongoose
+ * version. Nothing about where the source lives goes into the key, so a
+ * fresh clone or another branch hits the entries of an earlier build.
+ *
+ * Several processes may share the directory. Entries are written to a
+ * temporary file and renamed into place, so readers see a whole entry or
+ * none; unreadable entries count as misses. Eviction drops the least
+ * recently used entries once the directory outgrows its limit, and runs in
+ * one process at a time.
+ */
+final class RenderCache {
+
+    private static final int MAGIC = 0x4d524331; // "MRC1"
+
+    // Part of every key; bump whenever the parser output for a body changes
+    private static final int FORMAT_VERSION = 2;
+    private static final String LOCK_FILE = ".lock";
+
+    // Hits refresh an entry's modification time, which eviction goes by.
+    // Doing that at most hourly keeps a shared mount from a write per page.
+    private static final long TOUCH_INTERVAL_MILLIS = 60 * 60 * 1000;
+
+    // Left behind by processes that died mid-write
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final byte[] settings;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicBoolean warned = new AtomicBoolean();
+
+    RenderCache(Path dir, long maxBytes, String settings) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.settings = (FORMAT_VERSION + "; " + settings + "\0").getBytes(StandardCharsets.UTF_8);
+        Files.createDirectories(dir);
+    }
+
+    String key(CharSequence body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(settings);
+            digest.update(body.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * The entry stored under the key, or null on a miss.
+     */
+    Entry get(String key) {
+        Path file = entryPath(key);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Entry entry;
+        try {
+            entry = decode(data);
+        } catch (IOException e) {
+            // Damaged on disk; the next write of this key replaces it
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(file).toMillis() > TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+        } catch (IOException e) {
+            // Evicted meanwhile or read-only; the entry was still good
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Stores an entry. A cache that cannot be written to only costs speed,
+     * so failures are reported once and otherwise ignored.
+     */
+    void put(String key, String html, List<TOCItem> tableOfContents) {
+        Path file = entryPath(key);
+        Path temp = null;
+        try {
+            byte[] data = encode(html, tableOfContents);
+            Files.createDirectories(file.getParent());
+            // Not createTempFile, whose owner-only permissions would keep
+            // agents running as other users from reading the entry
+            Path candidate = file.resolveSibling(key
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try (OutputStream out = Files.newOutputStream(candidate, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                temp = candidate;
+                out.write(data);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            writes.incrementAndGet();
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // Cleaned up by a later eviction
+                }
+            }
+            if (warned.compareAndSet(false, true)) {
+                System.err.println("Warning: Could not write to render cache " + dir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    int getHits() { return hits.get(); }
+
+    int getMisses() { return misses.get(); }
+
+    /**
+     * Brings the cache back under its size limit if this build added to it.
+     * Skipped when another process holds the lock, as that one is already
+     * evicting. Returns the number of entries removed.
+     */
+    int evict() {
+        if (writes.get() == 0) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                return 0;
+            }
+
+            List<CachedFile> entries = new ArrayList<>();
+            long total = 0;
+            long now = System.currentTimeMillis();
+            try (DirectoryStream<Path> shards = Files.newDirectoryStream(dir, Files::isDirectory)) {
+                for (Path shard : shards) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+                        for (Path file : files) {
+                            BasicFileAttributes attributes;
+                            try {
+                                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                            } catch (NoSuchFileException e) {
+                                continue;
+                            }
+                            long modified = attributes.lastModifiedTime().toMillis();
+                            if (file.getFileName().toString().endsWith(".tmp")) {
+                                if (now - modified > STALE_TEMP_MILLIS) {
+                                    Files.deleteIfExists(file);
+                                }
+                                continue;
+                            }
+                            entries.add(new CachedFile(file, attributes.size(), modified));
+                            total += attributes.size();
+                        }
+                    }
+                }
+            }
+
+            if (total <= maxBytes) {
+                return 0;
+            }
+
+            // Down to 90%, so the next few builds do not evict again right away
+            entries.sort(Comparator.comparingLong(entry -> entry.modified));
+            long target = maxBytes / 10 * 9;
+            int evicted = 0;
+            for (CachedFile entry : entries) {
+                if (total <= target) {
+                    break;
+                }
+                Files.deleteIfExists(entry.path);
+                total -= entry.size;
+                evicted++;
+            }
+            return evicted;
+        } catch (OverlappingFileLockException e) {
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Warning: Could not evict from render cache " + dir + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Split over 256 directories to keep listings short
+    private Path entryPath(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static byte[] encode(String html, List<TOCItem> tableOfContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(html.length() + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] htmlBytes = html.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(MAGIC);
+        out.writeInt(htmlBytes.length);
+        out.write(htmlBytes);
+        out.writeInt(tableOfContents.size());
+        for (TOCItem item : tableOfContents) {
+            out.writeUTF(item.getId());
+            out.writeUTF(item.getText());
+            out.writeByte(item.getLevel());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.length < 8 || in.readInt() != MAGIC) {
+            throw new IOException("Not a render cache entry");
+        }
+        int htmlLength = in.readInt();
+        if (htmlLength < 0 || htmlLength > data.length) {
+            throw new IOException("Truncated render cache entry");
+        }
+        byte[] htmlBytes = new byte[htmlLength];
+        in.readFully(htmlBytes);
+
+        int count = in.readInt();
+        List<TOCItem> tableOfContents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tableOfContents.add(new TOCItem(in.readUTF(), in.readUTF(), in.readByte()));
+        }
+        if (in.available() > 0) {
+            throw new IOException("Trailing bytes in render cache entry");
+        }
+        return new Entry(new String(htmlBytes, StandardCharsets.UTF_8), tableOfContents);
+    }
+
+    static final class Entry {
+        final String html;
+        final List<TOCItem> tableOfContents;
+
+        Entry(String html, List<TOCItem> tableOfContents) {
+            this.html = html;
+            this.tableOfContents = tableOfContents;
+        }
+    }
+
+    private static final class CachedFile {
+        final Path path;
+        final long size;
+        final long modified;
+
+        CachedFile(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
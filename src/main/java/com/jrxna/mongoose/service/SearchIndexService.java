@@ -0,0 +1,333 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.DocumentTerms;
+import com.jrxna.mongoose.model.MarkdownFile;
+import com.jrxna.mongoose.model.TOCItem;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Builds the client-side search index: an inverted index from term to
+ * pages, split into shards by the first two characters of the term so a
+ * browser only fetches the shards its query needs.
+ *
+ * Layout under the output directory:
+ *   search/docs/{n}.json     [[url, title], ...] for document ids n*250 and up
+ *   search/shards/{xx}.json  {"term": [id, score, id, score, ...], ...}
+ *
+ * Postings are sorted by score and capped, so very common terms cannot
+ * blow up a shard. assets/js/search.js tokenizes queries the same way.
+ */
+@Service
+public class SearchIndexService {
+
+    public static final String CACHE_FILE = ".mongoose-search.cache";
+    public static final String INDEX_DIR = "search";
+
+    private static final int CACHE_VERSION = 2;
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 32;
+    private static final int MAX_POSTINGS = 500;
+    private static final int DOCS_PER_CHUNK = 250;
+
+    private static final int TITLE_WEIGHT = 10;
+    private static final int HEADING_WEIGHT = 5;
+    private static final int BODY_WEIGHT = 1;
+
+    // Keep in sync with STOP_WORDS in search.js
+    private static final Set<String> STOP_WORDS = Set.of(
+            "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "in", "is", "it", "its",
+            "of", "on", "or", "that", "the", "this", "to", "was", "were", "will", "with",
+            "http", "https", "www", "com");
+
+    /**
+     * Tokenizes title, TOC headings and markdown body of a parsed page.
+     */
+    public DocumentTerms terms(MarkdownFile file, String hash) {
+        Map<String, Integer> weights = new HashMap<>();
+        tokenize(file.getTitle(), TITLE_WEIGHT, weights);
+        for (TOCItem item : file.getTableOfContents()) {
+            tokenize(item.getText(), HEADING_WEIGHT, weights);
+        }
+        if (file.getContent() != null) {
+            tokenize(file.getContent(), BODY_WEIGHT, weights);
+        }
+
+        String[] terms = weights.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] termWeights = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termWeights[i] = weights.get(terms[i]);
+            // Most terms repeat across pages; share one copy
+            terms[i] = terms[i].intern();
+        }
+        return new DocumentTerms(file.getFilePath(), hash, terms, termWeights);
+    }
+
+    private void tokenize(String text, int weight, Map<String, Integer> weights) {
+        if (text == null) {
+            return;
+        }
+        // Lower-cased whole and split on anything but \p{L} and \p{N}, as
+        // search.js does with the query
+        text = text.toLowerCase(Locale.ROOT);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); ) {
+            int c = i < text.length() ? text.codePointAt(i) : ' ';
+            if (isTermChar(c)) {
+                token.appendCodePoint(c);
+            } else if (token.length() > 0) {
+                String term = token.toString();
+                if (term.length() >= MIN_TERM_LENGTH && term.length() <= MAX_TERM_LENGTH
+                        && !STOP_WORDS.contains(term)) {
+                    weights.merge(term, weight, Integer::sum);
+                }
+                token.setLength(0);
+            }
+            i += Character.charCount(c);
+        }
+    }
+
+    /**
+     * Writes the document table and all shards for the pages in display
+     * order, on the pool when one is given. Shards whose content did not
+     * change are left alone, so incremental builds touch few files. Returns
+     * the number of bytes written.
+     */
+    public long writeIndex(Path outputDir, List<MarkdownFile> files, Map<String, DocumentTerms> termsByPath,
+            ForkJoinPool pool) throws IOException {
+        Path indexDir = outputDir.resolve(INDEX_DIR);
+        Path shardDir = indexDir.resolve("shards");
+        Path docsDir = indexDir.resolve("docs");
+        Files.createDirectories(shardDir);
+        Files.createDirectories(docsDir);
+
+        // Document table in chunks, so a query only loads the ones it shows
+        AtomicLong written = new AtomicLong();
+        Set<String> chunkNames = new HashSet<>();
+        List<DocumentTerms> documents = new ArrayList<>(files.size());
+        StringBuilder docs = new StringBuilder();
+        for (int id = 0; id < files.size(); id++) {
+            MarkdownFile file = files.get(id);
+            documents.add(termsByPath.get(file.getFilePath()));
+            docs.append(id % DOCS_PER_CHUNK == 0 ? "[\n[" : ",\n[");
+            Json.appendQuoted(docs, file.getOutputPath());
+            docs.append(',');
+            Json.appendQuoted(docs, file.getTitle());
+            docs.append(']');
+
+            if (id % DOCS_PER_CHUNK == DOCS_PER_CHUNK - 1 || id == files.size() - 1) {
+                String name = (id / DOCS_PER_CHUNK) + ".json";
+                written.addAndGet(writeIfChanged(docsDir.resolve(name), docs.append("\n]\n").toString()));
+                chunkNames.add(name);
+                docs.setLength(0);
+            }
+        }
+        deleteOthers(docsDir, chunkNames);
+
+        Set<String> shardNames = ConcurrentHashMap.newKeySet();
+
+        Runnable buildShards = () -> {
+            // shard -> term -> postings as {document id, weight}
+            // In parallel only on the build's own pool, never the common one
+            IntStream ids = IntStream.range(0, documents.size());
+            ConcurrentMap<String, Map<String, List<int[]>>> shards = (pool != null ? ids.parallel() : ids)
+                    .boxed()
+                    .flatMap(id -> {
+                        DocumentTerms terms = documents.get(id);
+                        return terms == null ? Stream.empty() : IntStream.range(0, terms.getTerms().length)
+                                .mapToObj(t -> new Posting(terms.getTerms()[t], id, terms.getWeights()[t]));
+                    })
+                    .collect(Collectors.groupingByConcurrent(posting -> shardOf(posting.term),
+                            Collectors.groupingBy(posting -> posting.term,
+                                    Collectors.mapping(posting -> new int[] { posting.document, posting.weight },
+                                            Collectors.toList()))));
+
+            (pool != null ? shards.entrySet().parallelStream() : shards.entrySet().stream()).forEach(shard -> {
+                String json = shardJson(shard.getValue(), documents.size());
+                shardNames.add(shard.getKey() + ".json");
+                try {
+                    written.addAndGet(writeIfChanged(shardDir.resolve(shard.getKey() + ".json"), json));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+
+        try {
+            if (pool != null) {
+                pool.submit(buildShards).get();
+            } else {
+                buildShards.run();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building the search index", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw new IOException("Failed to build the search index", e.getCause());
+        }
+
+        // Shards for prefixes that no page uses any more
+        deleteOthers(shardDir, shardNames);
+
+        System.out.println("   Indexed " + documents.size() + " pages into " + shardNames.size() + " shards");
+        return written.get();
+    }
+
+    private String shardJson(Map<String, List<int[]>> postingsByTerm, int documentCount) {
+        List<String> terms = new ArrayList<>(postingsByTerm.keySet());
+        Collections.sort(terms);
+
+        StringBuilder json = new StringBuilder("{");
+        for (String term : terms) {
+            List<int[]> postings = postingsByTerm.get(term);
+
+            // tf-idf with a damped term frequency, scaled to integers
+            double idf = Math.log(1.0 + (double) documentCount / postings.size());
+            List<int[]> scored = new ArrayList<>(postings.size());
+            for (int[] posting : postings) {
+                int score = (int) Math.max(1, Math.round(100 * (1 + Math.log(posting[1])) * idf));
+                scored.add(new int[] { posting[0], score });
+            }
+            scored.sort((a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+
+            json.append(json.length() > 1 ? ",\n" : "\n");
+            Json.appendQuoted(json, term);
+            json.append(":[");
+            for (int i = 0; i < Math.min(MAX_POSTINGS, scored.size()); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(scored.get(i)[0]).append(',').append(scored.get(i)[1]);
+            }
+            json.append(']');
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    // Letters and numbers of any kind, such as ² and ½, not just decimal digits
+    private static boolean isTermChar(int c) {
+        if (Character.isLetter(c)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER
+                || type == Character.OTHER_NUMBER;
+    }
+
+    // Non [a-z0-9] characters map to '_'; search.js does the same
+    static String shardOf(String term) {
+        char[] prefix = new char[Math.min(2, term.length())];
+        for (int i = 0; i < prefix.length; i++) {
+            char c = term.charAt(i);
+            prefix[i] = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ? c : '_';
+        }
+        return new String(prefix);
+    }
+
+    private void deleteOthers(Path dir, Set<String> keep) throws IOException {
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : existing) {
+                if (!keep.contains(file.getFileName().toString())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private long writeIfChanged(Path file, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(file) && Files.size(file) == bytes.length
+                && Arrays.equals(Files.readAllBytes(file), bytes)) {
+            return 0;
+        }
+        Files.write(file, bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Terms saved by the previous incremental build, by source path. Empty
+     * when there are none or they cannot be read.
+     */
+    public Map<String, DocumentTerms> loadCache(Path outputDir) {
+        Path cacheFile = outputDir.resolve(CACHE_FILE);
+        Map<String, DocumentTerms> cache = new HashMap<>();
+        if (!Files.exists(cacheFile)) {
+            return cache;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_VERSION) {
+                return cache;
+            }
+            int count = in.readInt();
+            for (int d = 0; d < count; d++) {
+                String sourcePath = in.readUTF();
+                String hash = in.readUTF();
+                String[] terms = new String[in.readInt()];
+                int[] weights = new int[terms.length];
+                for (int t = 0; t < terms.length; t++) {
+                    terms[t] = in.readUTF().intern();
+                    weights[t] = in.readInt();
+                }
+                cache.put(sourcePath, new DocumentTerms(sourcePath, hash, terms, weights));
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Ignoring unreadable search cache: " + e.getMessage());
+            return new HashMap<>();
+        }
+        return cache;
+    }
+
+    public void saveCache(Path outputDir, Collection<DocumentTerms> documents) throws IOException {
+        Path cacheFile = outputDir.resolve(CACHE_FILE);
+        Path tempFile = outputDir.resolve(CACHE_FILE + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            List<DocumentTerms> cached = documents.stream()
+                    .filter(terms -> terms.getHash() != null)
+                    .collect(Collectors.toList());
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(cached.size());
+            for (DocumentTerms terms : cached) {
+                out.writeUTF(terms.getSourcePath());
+                out.writeUTF(terms.getHash());
+                out.writeInt(terms.getTerms().length);
+                for (int t = 0; t < terms.getTerms().length; t++) {
+                    out.writeUTF(terms.getTerms()[t]);
+                    out.writeInt(terms.getWeights()[t]);
+                }
+            }
+        }
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static final class Posting {
+        final String term;
+        final int document;
+        final int weight;
+
+        Posting(String term, int document, int weight) {
+            this.term = term;
+            this.document = document;
+            this.weight = weight;
+        }
+    }
+}
@@ -3,195 +3,689 @@ package com.jrxna.mongoose.service;
 import com.jrxna.mongoose.model.*;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import jdk.jfr.FlightRecorder;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class SiteGeneratorService {
 
-    @Autowired
-    private MarkdownParserService markdownParser;
+    private final MarkdownParserService markdownParser;
+    private final TemplateService templateService;
+    private final BuildManifestService manifestService;
+    private final PrecompressionService precompressionService;
+    private final SearchIndexService searchIndexService;
+    private final SitemapService sitemapService;
 
+    // Constructor injection, so MongooseLauncher can wire it without Spring
     @Autowired
-    private TemplateService templateService;
+    public SiteGeneratorService(MarkdownParserService markdownParser, TemplateService templateService,
+            BuildManifestService manifestService, PrecompressionService precompressionService,
+            SearchIndexService searchIndexService, SitemapService sitemapService) {
+        this.markdownParser = markdownParser;
+        this.templateService = templateService;
+        this.manifestService = manifestService;
+        this.precompressionService = precompressionService;
+        this.searchIndexService = searchIndexService;
+        this.sitemapService = sitemapService;
+    }
+
+    public BuildReport generateSite(String inputPath, String outputPath) throws IOException {
+        return generateSite(inputPath, outputPath, new BuildOptions());
+    }
+
+    /**
+     * Whether the output path names a .zip, .tar or .tar.gz file the site is
+     * written into, rather than a directory.
+     */
+    public static boolean isArchive(String outputPath) {
+        return ArchiveSink.formatOf(Paths.get(outputPath)) != null;
+    }
 
-    public void generateSite(String inputPath, String outputPath) throws IOException {
+    public BuildReport generateSite(String inputPath, String outputPath, BuildOptions options) throws IOException {
         Path inputDir = Paths.get(inputPath);
-        Path outputDir = Paths.get(outputPath);
+        Path target = Paths.get(outputPath);
 
         if (!Files.exists(inputDir) || !Files.isDirectory(inputDir)) {
             throw new IOException("Input directory does not exist: " + inputPath);
         }
 
+        // An archive gets the pages straight from the writer. The few other
+        // files are written to a scratch directory and added at the end.
+        boolean archive = isArchive(outputPath);
+        if (archive && (options.isIncremental() || options.isPrecompress())) {
+            throw new IOException("--incremental and --precompress need an output directory, not an archive");
+        }
+        if (options.isAtomic() && (archive || options.isIncremental())) {
+            throw new IOException("--atomic swaps in a full build of an output directory; "
+                    + "it cannot be combined with --incremental or an archive");
+        }
+        // A link, as --atomic leaves, is built through; Files.createDirectories
+        // and Files.walk would otherwise take it for a file
+        Path outputDir = Files.isSymbolicLink(target) ? target.toRealPath() : target;
+        StagedOutput staged = null;
+        if (archive) {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            outputDir = Files.createTempDirectory(target.toAbsolutePath().getParent(), ".mongoose-");
+        } else if (options.isAtomic()) {
+            staged = StagedOutput.create(target);
+            outputDir = staged.getDirectory();
+        }
+
+        try {
+            return generateSite(inputDir, outputDir, archive ? target : null, staged, options);
+        } finally {
+            if (archive) {
+                deleteTree(outputDir);
+            }
+            if (staged != null) {
+                staged.discard();
+            }
+        }
+    }
+
+    private BuildReport generateSite(Path inputDir, Path outputDir, Path archive, StagedOutput staged,
+            BuildOptions options) throws IOException {
+        long buildStart = System.nanoTime();
+        templateService.loadLayout(options);
+        markdownParser.configure(options);
         Files.createDirectories(outputDir);
+        BuildReport report = new BuildReport();
+        report.setThreads(options.getThreads());
 
         System.out.println("📖 Scanning markdown files...");
 
-        List<Section> sections = scanDirectory(inputDir);
+        BuildPhaseEvent phase = beginPhase("scan");
+        PhaseTimer timer = new PhaseTimer();
+        List<Section> sections = SiteScanner.scan(inputDir, options.getThreads());
+        timer.record(report, "scan");
 
         System.out.println("   Found " + sections.size() + " sections");
         int totalFiles = sections.stream()
                 .mapToInt(s -> s.getFiles().size())
                 .sum();
         System.out.println("   Found " + totalFiles + " markdown files");
+        report.setSourceFiles(totalFiles);
+        endPhase(phase, totalFiles);
+
+        String settings = outputSettings(options);
+        BuildManifest previous = options.isIncremental()
+                ? manifestService.load(outputDir, settings)
+                : new BuildManifest();
+        BuildManifest manifest = new BuildManifest();
+        manifest.setSettings(settings);
+
+        // Files whose source was parsed this run, as opposed to restored from the manifest
+        Set<MarkdownFile> changed = ConcurrentHashMap.newKeySet();
+
+        // Published while pages are parsed; a changed image renames its file,
+        // so every page is rendered again, as it is for a changed sidebar
+        ContentImages images = options.isImages() ? new ContentImages(inputDir, outputDir, options) : null;
+        boolean imagesChanged = images != null && images.changedSinceLastBuild();
+
+        RenderCache renderCache = options.getRenderCachePath() != null && images == null
+                ? new RenderCache(Paths.get(options.getRenderCachePath()), options.getRenderCacheMaxBytes(),
+                        mongooseVersion() + "; " + markdownParser.renderSettings())
+                : null;
+
+        ForkJoinPool pool = options.isParallel() ? new ForkJoinPool(options.getThreads()) : null;
+        OutputSink sink = archive != null
+                ? new ArchiveSink(archive, options.isFsync())
+                : new DirectorySink(outputDir, staged != null ? staged.getPrevious() : null, options.isFsync());
+        PageWriter writer = new PageWriter(sink, options.getIoThreads(), options.getThreads(),
+                options.isLowMemory(), report);
+        try {
+            System.out.println("\n🔄 Parsing markdown and generating HTML...");
+
+            // Parse all markdown files first to get dates. In low-memory mode
+            // this pass only reads front matter; bodies are parsed one page at
+            // a time while rendering.
+            phase = beginPhase("parse");
+            processFiles(collectFiles(sections), pool, "parse", report, file -> {
+                PhaseTimer parseTimer = new PhaseTimer();
+                try {
+                    if (options.isIncremental()) {
+                        ManifestEntry before = previous.getEntry(file.getFilePath());
+                        ManifestEntry entry = manifestService.fingerprint(file, before);
+                        manifest.putEntry(entry);
+                        if (manifestService.restore(file, before, entry)) {
+                            return;
+                        }
+                    }
+                    FileTiming timing = report.fileTiming(file.getFilePath());
+                    if (options.isLowMemory()) {
+                        markdownParser.parseMetadata(file, timing);
+                    } else {
+                        markdownParser.parseMarkdown(file, timing, images, renderCache);
+                    }
+                    changed.add(file);
+                } finally {
+                    parseTimer.record(report, "parse");
+                }
+            });
+            endPhase(phase, totalFiles);
+
+            report.setParsedFiles(changed.size());
+            System.out.println("   " + (options.isLowMemory() ? "Read metadata of " : "Parsed ")
+                    + changed.size() + " files");
+
+            System.out.println("\n📊 Sorting by date...");
+
+            phase = beginPhase("sort");
+            timer = new PhaseTimer();
+
+            SiteScanner.sort(sections);
+
+            // A changed sidebar means every page has to be rendered again
+            manifest.setNavigationHash(manifestService.navigationHash(sections));
+            boolean sidebarChanged = !manifest.getNavigationHash().equals(previous.getNavigationHash());
+            timer.record(report, "sort");
+            endPhase(phase, totalFiles);
+
+            System.out.println("\n📝 Generating pages...");
+
+            phase = beginPhase("render");
+
+            // index.html shows the first page, so it is written alongside that
+            // page while its body is still in memory
+            MarkdownFile firstFile = sections.isEmpty() || sections.get(0).getFiles().isEmpty()
+                    ? null
+                    : sections.get(0).getFiles().get(0);
+            Path indexPath = outputDir.resolve("index.html");
+            boolean indexChanged = firstFile != null
+                    && (sidebarChanged || imagesChanged || changed.contains(firstFile)
+                            || !firstFile.getFilePath().equals(previous.getIndexSource())
+                            || !Files.exists(indexPath));
+            if (firstFile != null) {
+                manifest.setIndexSource(firstFile.getFilePath());
+            }
 
-        System.out.println("\n🔄 Parsing markdown and generating HTML...");
+            // Terms of unchanged pages come from the previous build's cache
+            Map<String, DocumentTerms> searchCache = options.isSearch() && options.isIncremental()
+                    ? searchIndexService.loadCache(outputDir)
+                    : Map.of();
+            Map<String, DocumentTerms> searchTerms = new ConcurrentHashMap<>();
 
-        // Parse all markdown files first to get dates
-        for (Section section : sections) {
-            for (MarkdownFile file : section.getFiles()) {
-                markdownParser.parseMarkdown(file);
+            NavigationModel navigation = templateService.buildNavigation(sections);
+            AtomicInteger generated = new AtomicInteger();
+            processFiles(collectFiles(sections), pool, "render", report, file -> {
+                FileTiming timing = report.fileTiming(file.getFilePath());
+                Path outputFile = outputDir.resolve(file.getOutputPath());
+                boolean renderPage = !options.isIncremental() || sidebarChanged || imagesChanged
+                        || changed.contains(file) || !Files.exists(outputFile);
+                boolean renderIndex = file == firstFile && indexChanged;
+
+                if (renderPage || renderIndex) {
+                    if (file.getHtmlContent() == null) {
+                        PhaseTimer parseTimer = new PhaseTimer();
+                        markdownParser.parseMarkdown(file, timing, images, renderCache);
+                        parseTimer.record(report, "parse");
+                    }
+                    if (renderPage) {
+                        PhaseTimer stepTimer = new PhaseTimer();
+                        PageBuffer html = writer.acquire();
+                        try {
+                            templateService.renderPage(file, navigation, options, html);
+                        } catch (RuntimeException e) {
+                            writer.release(html);
+                            throw e;
+                        }
+                        timing.addRenderNanos(stepTimer.record(report, "render"));
+                        writer.write(file.getOutputPath(), html, timing);
+                        generated.incrementAndGet();
+                    }
+                    if (renderIndex) {
+                        PhaseTimer stepTimer = new PhaseTimer();
+                        writeIndex(file, navigation, options, writer);
+                        stepTimer.record(report, "index");
+                    }
+                }
+
+                if (options.isSearch()) {
+                    PhaseTimer searchTimer = new PhaseTimer();
+                    String hash = options.isIncremental() ? manifest.getEntry(file.getFilePath()).getHash() : null;
+                    DocumentTerms terms = searchCache.get(file.getFilePath());
+                    if (terms == null || hash == null || !hash.equals(terms.getHash())) {
+                        if (file.getContent() == null) {
+                            markdownParser.parseMarkdown(file, timing, images, renderCache);
+                        }
+                        terms = searchIndexService.terms(file, hash);
+                    }
+                    searchTerms.put(file.getFilePath(), terms);
+                    searchTimer.record(report, "search");
+                }
+                if (options.isIncremental()) {
+                    manifestService.record(file, manifest.getEntry(file.getFilePath()));
+                }
+                if (options.isLowMemory()) {
+                    // Only metadata is needed from here on
+                    file.setContent(null);
+                    file.setHtmlContent(null);
+                }
+            });
+            writer.finish();
+
+            endPhase(phase, totalFiles);
+            report.setGeneratedPages(generated.get());
+            System.out.println("   Generated " + generated.get() + " pages");
+            if (report.getWriterPages() > 0) {
+                double seconds = Math.max(report.getWriterNanos(), 1) / 1e9;
+                double megabytes = report.getWriterBytes() / (1024.0 * 1024.0);
+                System.out.println(String.format(Locale.ROOT, "   Wrote %d pages (%.1f MB) at %.0f pages/s, %.1f MB/s%s",
+                        report.getWriterPages(), megabytes, report.getWriterPages() / seconds, megabytes / seconds,
+                        options.isFsync() ? ", synced" : ""));
+            }
+            if (sink instanceof DirectorySink directorySink && directorySink.getLinked() > 0) {
+                System.out.println("   Linked " + directorySink.getLinked() + " unchanged pages to the previous build");
+            }
+            if (indexChanged) {
+                System.out.println("   Created index.html");
+            }
+            if (renderCache != null) {
+                int evicted = renderCache.evict();
+                System.out.println("   Render cache: " + renderCache.getHits() + " hits, "
+                        + renderCache.getMisses() + " misses" + (evicted > 0 ? ", evicted " + evicted : ""));
+            } else if (options.getRenderCachePath() != null) {
+                System.out.println("   Render cache skipped: with --images pages depend on where they are written");
             }
-        }
 
-        System.out.println("   Parsed " + totalFiles + " files");
+            if (options.isSearch()) {
+                System.out.println("\n🔎 Building search index...");
+                phase = beginPhase("search");
+                timer = new PhaseTimer();
+                report.addBytesWritten(searchIndexService.writeIndex(outputDir, collectFiles(sections),
+                        searchTerms, pool));
+                if (options.isIncremental()) {
+                    searchIndexService.saveCache(outputDir, searchTerms.values());
+                }
+                timer.record(report, "search");
+                endPhase(phase, totalFiles);
+            }
 
-        System.out.println("\n📊 Sorting by date...");
+            if (options.isSitemap() || options.isFeeds()) {
+                System.out.println("\n🗺  Writing sitemap and feeds...");
+                phase = beginPhase("sitemap");
+                timer = new PhaseTimer();
+                String baseUrl = sitemapService.baseUrl(options.getBaseUrl());
+                if (options.isSitemap()) {
+                    report.addBytesWritten(sitemapService.writeSitemaps(sections, outputDir, baseUrl));
+                    System.out.println("   Wrote " + SitemapService.SITEMAP_FILE + " for " + baseUrl);
+                }
+                if (options.isFeeds()) {
+                    report.addBytesWritten(sitemapService.writeFeeds(sections, outputDir, baseUrl));
+                    System.out.println("   Wrote " + SitemapService.FEED_FILE + " and " + sections.size()
+                            + " section feeds");
+                }
+                timer.record(report, "sitemap");
+                endPhase(phase, totalFiles);
+            }
 
-        // Sort files within each section (oldest first)
-        for (Section section : sections) {
-            section.getFiles().sort((f1, f2) -> f1.getDate().compareTo(f2.getDate()));
-        }
+            if (images != null) {
+                System.out.println("\n🖼  Publishing images...");
+                phase = beginPhase("images");
+                timer = new PhaseTimer();
+                report.addBytesWritten(images.finish());
+                timer.record(report, "images");
+                endPhase(phase, images.inUse());
+                System.out.println("   Published " + images.inUse() + " images");
+            }
 
-        // Sort sections by newest date in each section (newest sections first)
-        sections.sort((s1, s2) -> {
-            LocalDate newest1 = s1.getFiles().stream()
-                    .map(MarkdownFile::getDate)
-                    .max(LocalDate::compareTo)
-                    .orElse(LocalDate.MIN);
-            LocalDate newest2 = s2.getFiles().stream()
-                    .map(MarkdownFile::getDate)
-                    .max(LocalDate::compareTo)
-                    .orElse(LocalDate.MIN);
-            return newest2.compareTo(newest1); // Reverse order - newest first
-        });
+            System.out.println("\n📦 Copying assets...");
+            phase = beginPhase("assets");
+            timer = new PhaseTimer();
+            copyAssets(outputDir, options, report);
+            if (options.isNavigationFragment()) {
+                writeNavigation(outputDir, navigation, report);
+            }
+            timer.record(report, "assets");
+            endPhase(phase, 0);
+
+            if (options.isPrecompress()) {
+                System.out.println("\n🗜  Compressing output...");
+                phase = beginPhase("compress");
+                timer = new PhaseTimer();
+                report.addBytesWritten(precompressionService.precompress(outputDir, pool));
+                timer.record(report, "compress");
+                endPhase(phase, 0);
+            }
 
-        System.out.println("\n📝 Generating pages...");
+            if (sink instanceof ArchiveSink archiveSink) {
+                System.out.println("\n🗃  Writing " + archive.getFileName() + "...");
+                phase = beginPhase("archive");
+                timer = new PhaseTimer();
+                archiveSink.addFiles(outputDir);
+                long size = archiveSink.finish();
+                timer.record(report, "archive");
+                endPhase(phase, archiveSink.getEntryCount());
+                System.out.println("   Archived " + archiveSink.getEntryCount() + " files, "
+                        + size / 1024 + " KB");
+            }
 
-        for (Section section : sections) {
-            for (MarkdownFile file : section.getFiles()) {
-                String html = templateService.generatePage(file, sections);
-                Path outputFile = outputDir.resolve(file.getOutputPath());
-                Files.createDirectories(outputFile.getParent());
-                Files.writeString(outputFile, html);
+            if (staged != null) {
+                System.out.println("\n🔀 Swapping in the new build...");
+                phase = beginPhase("swap");
+                timer = new PhaseTimer();
+                int unchanged = staged.linkUnchanged();
+                staged.publish();
+                timer.record(report, "swap");
+                endPhase(phase, unchanged);
+                System.out.println("   Kept " + unchanged + " unchanged files from the previous build");
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
+            writer.close();
+            sink.close();
         }
 
-        System.out.println("   Generated " + totalFiles + " pages");
+        if (options.isIncremental()) {
+            phase = beginPhase("manifest");
+            timer = new PhaseTimer();
+            removeStaleOutputs(previous, manifest, outputDir);
+            manifestService.save(manifest, outputDir);
+            timer.record(report, "manifest");
+            endPhase(phase, totalFiles);
+        }
 
-        System.out.println("\n📦 Copying assets...");
-        copyAssets(outputDir);
+        report.setWallNanos(System.nanoTime() - buildStart);
+        if (options.getReportPath() != null) {
+            BuildReportWriter.write(report, Paths.get(options.getReportPath()));
+            System.out.println("\n📋 Wrote build report to " + options.getReportPath());
+        }
 
-        if (!sections.isEmpty() && !sections.get(0).getFiles().isEmpty()) {
-            MarkdownFile firstFile = sections.get(0).getFiles().get(0);
+        return report;
+    }
 
-            MarkdownFile indexFile = new MarkdownFile();
-            indexFile.setTitle(firstFile.getTitle());
-            indexFile.setDate(firstFile.getDate());
-            indexFile.setContent(firstFile.getContent());
-            indexFile.setHtmlContent(firstFile.getHtmlContent());
-            indexFile.setTableOfContents(firstFile.getTableOfContents());
-            indexFile.setFilePath(firstFile.getFilePath()); // ADD THIS
-            indexFile.setOutputPath("index.html");
+    // Loading the first event class starts up JFR, which takes longer than a
+    // small build; events are only created while a recording can exist
+    private static boolean flightRecording() {
+        return FlightRecorder.isInitialized();
+    }
 
-            String indexHtml = templateService.generatePage(indexFile, sections);
-            Files.writeString(outputDir.resolve("index.html"), indexHtml);
-            System.out.println("   Created index.html");
+    private BuildPhaseEvent beginPhase(String name) {
+        if (!flightRecording()) {
+            return null;
         }
+        BuildPhaseEvent event = new BuildPhaseEvent();
+        event.phase = name;
+        event.begin();
+        return event;
     }
 
-    private List<Section> scanDirectory(Path root) throws IOException {
-        List<Section> sections = new ArrayList<>();
+    private void endPhase(BuildPhaseEvent event, int files) {
+        if (event == null) {
+            return;
+        }
+        event.files = files;
+        event.commit();
+    }
 
-        List<Path> sectionDirs = Files.list(root)
-                .filter(Files::isDirectory)
-                .sorted()
-                .collect(Collectors.toList());
+    private void writePage(Path file, String html, BuildReport report) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        Files.write(file, bytes);
+        report.addBytesWritten(bytes.length);
+    }
 
-        for (Path sectionDir : sectionDirs) {
-            String originalName = sectionDir.getFileName().toString();
-            String displayName = formatSectionName(originalName);
-            String urlSafeName = toUrlSafe(originalName);
+    private void writeIndex(MarkdownFile firstFile, NavigationModel navigation, BuildOptions options,
+            PageWriter writer) throws IOException {
+        MarkdownFile indexFile = new MarkdownFile();
+        indexFile.setTitle(firstFile.getTitle());
+        indexFile.setDate(firstFile.getDate());
+        indexFile.setContent(firstFile.getContent());
+        indexFile.setHtmlContent(firstFile.getHtmlContent());
+        indexFile.setTableOfContents(firstFile.getTableOfContents());
+        indexFile.setFilePath(firstFile.getFilePath()); // ADD THIS
+        indexFile.setOutputPath("index.html");
+
+        PageBuffer indexHtml = writer.acquire();
+        try {
+            templateService.renderPage(indexFile, navigation, options, indexHtml);
+        } catch (RuntimeException e) {
+            writer.release(indexHtml);
+            throw e;
+        }
+        writer.write("index.html", indexHtml, null);
+    }
+
+    /**
+     * Deletes the pages of sources that were removed since the previous
+     * build, along with any directories left empty by that.
+     */
+    private void removeStaleOutputs(BuildManifest previous, BuildManifest manifest, Path outputDir) throws IOException {
+        Set<String> outputs = new HashSet<>();
+        for (ManifestEntry entry : manifest.getEntries()) {
+            outputs.add(entry.getOutputPath());
+        }
 
-            Section section = new Section(displayName);
+        int removed = 0;
+        for (ManifestEntry entry : previous.getEntries()) {
+            if (manifest.getEntry(entry.getSourcePath()) != null || outputs.contains(entry.getOutputPath())) {
+                continue;
+            }
 
-            List<Path> markdownFiles = Files.list(sectionDir)
-                    .filter(p -> p.toString().endsWith(".md"))
-                    .sorted()
-                    .collect(Collectors.toList());
+            Path staleFile = outputDir.resolve(entry.getOutputPath());
+            if (Files.deleteIfExists(staleFile)) {
+                removed++;
+            }
+            Files.deleteIfExists(staleFile.resolveSibling(staleFile.getFileName() + PrecompressionService.SUFFIX));
 
-            for (Path mdFile : markdownFiles) {
-                MarkdownFile file = new MarkdownFile();
-                file.setFilePath(mdFile.toString());
+            Path dir = staleFile.getParent();
+            while (dir != null && !dir.equals(outputDir) && isEmptyDirectory(dir)) {
+                Files.delete(dir);
+                dir = dir.getParent();
+            }
+        }
 
-                // Use URL-safe folder name in output path
-                String fileName = mdFile.getFileName().toString().replace(".md", ".html");
-                String outputPath = urlSafeName + "/" + fileName;
-                file.setOutputPath(outputPath);
+        if (removed > 0) {
+            System.out.println("   Removed " + removed + " stale pages");
+        }
+    }
 
-                section.addFile(file);
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (var tree = Files.walk(root)) {
+            for (Path path : tree.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
             }
+        }
+    }
+
+    private boolean isEmptyDirectory(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            return !entries.iterator().hasNext();
+        }
+    }
+
+    private String mongooseVersion() {
+        String version = getClass().getPackage().getImplementationVersion();
+        return "mongoose " + (version != null ? version : "dev");
+    }
+
+    // Anything besides the sources that shapes the generated pages
+    private String outputSettings(BuildOptions options) throws IOException {
+        String layout = templateService.getLayoutFingerprint(options);
+        return mongooseVersion()
+                + "; css " + (options.isExternalStylesheet() ? templateService.getStylesheetPath() : "inline")
+                + (options.isSearch() ? "; search" : "")
+                + (options.isNavigationFragment() ? "; nav fragment" : "")
+                + (options.isImages() ? "; images " + Arrays.toString(options.getImageWidths()) : "")
+                + (options.getTocMinLevel() != 2 || options.getTocMaxLevel() != 3
+                        ? "; toc h" + options.getTocMinLevel() + "-h" + options.getTocMaxLevel()
+                        : "")
+                + (layout != null ? "; layout " + layout : "");
+    }
 
-            if (!section.getFiles().isEmpty()) {
-                sections.add(section);
+    /**
+     * Runs the task for every file, on the pool when one is given. A failing
+     * file does not stop the others; all failures are reported together.
+     */
+    private void processFiles(List<MarkdownFile> files, ForkJoinPool pool, String pass, BuildReport report,
+            FileTask task) throws IOException {
+        Map<MarkdownFile, Exception> failures = new ConcurrentHashMap<>();
+
+        if (pool == null) {
+            for (MarkdownFile file : files) {
+                runTask(task, file, pass, report, failures);
+            }
+        } else {
+            try {
+                pool.submit(() -> files.parallelStream()
+                        .forEach(file -> runTask(task, file, pass, report, failures))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while processing files", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to process files", e.getCause());
             }
         }
 
-        List<Path> rootFiles = Files.list(root)
-                .filter(p -> p.toString().endsWith(".md"))
-                .sorted()
-                .collect(Collectors.toList());
+        if (!failures.isEmpty()) {
+            List<MarkdownFile> failed = new ArrayList<>(failures.keySet());
+            failed.sort(Comparator.comparing(MarkdownFile::getFilePath));
+
+            StringBuilder message = new StringBuilder()
+                    .append(failed.size()).append(" file(s) failed:");
+            for (MarkdownFile file : failed) {
+                message.append("\n   ").append(file.getFilePath())
+                        .append(": ").append(failures.get(file).getMessage());
+            }
+
+            IOException error = new IOException(message.toString());
+            failed.forEach(file -> error.addSuppressed(failures.get(file)));
+            throw error;
+        }
+    }
 
-        if (!rootFiles.isEmpty()) {
-            Section rootSection = new Section("Documentation");
-            for (Path mdFile : rootFiles) {
-                MarkdownFile file = new MarkdownFile();
-                file.setFilePath(mdFile.toString());
-                file.setOutputPath(mdFile.getFileName().toString().replace(".md", ".html"));
-                rootSection.addFile(file);
+    private void runTask(FileTask task, MarkdownFile file, String pass, BuildReport report,
+            Map<MarkdownFile, Exception> failures) {
+        DocumentEvent event = flightRecording() ? new DocumentEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long allocated = PhaseTimer.allocatedBytes();
+        try {
+            task.run(file);
+        } catch (Exception e) {
+            failures.put(file, e);
+        } finally {
+            allocated = PhaseTimer.allocatedBytes() - allocated;
+            report.fileTiming(file.getFilePath()).addAllocatedBytes(allocated);
+            if (event != null && event.shouldCommit()) {
+                event.path = file.getFilePath();
+                event.pass = pass;
+                event.allocated = allocated;
+                event.commit();
             }
-            sections.add(0, rootSection);
         }
+    }
 
-        return sections;
+    private List<MarkdownFile> collectFiles(List<Section> sections) {
+        List<MarkdownFile> files = new ArrayList<>();
+        for (Section section : sections) {
+            files.addAll(section.getFiles());
+        }
+        return files;
     }
 
-    private String formatSectionName(String dirName) {
-        return Arrays.stream(dirName.split("[-_]"))
-                .map(word -> word.substring(0, 1).toUpperCase() + word.substring(1))
-                .collect(Collectors.joining(" "));
+    @FunctionalInterface
+    private interface FileTask {
+        void run(MarkdownFile file) throws Exception;
     }
 
-    private void copyAssets(Path outputDir) throws IOException {
+    private void copyAssets(Path outputDir, BuildOptions options, BuildReport report) throws IOException {
         Path assetsDir = outputDir.resolve("assets/images");
         Files.createDirectories(assetsDir);
 
         // Copy logo and favicon from resources
         try (var logoStream = getClass().getResourceAsStream("/assets/images/Logo.png")) {
             if (logoStream != null) {
-                Files.copy(logoStream, assetsDir.resolve("Logo.png"),
-                        StandardCopyOption.REPLACE_EXISTING);
+                report.addBytesWritten(Files.copy(logoStream, assetsDir.resolve("Logo.png"),
+                        StandardCopyOption.REPLACE_EXISTING));
             }
         }
 
         try (var faviconStream = getClass().getResourceAsStream("/assets/images/Favicon.png")) {
             if (faviconStream != null) {
-                Files.copy(faviconStream, assetsDir.resolve("Favicon.png"),
-                        StandardCopyOption.REPLACE_EXISTING);
+                report.addBytesWritten(Files.copy(faviconStream, assetsDir.resolve("Favicon.png"),
+                        StandardCopyOption.REPLACE_EXISTING));
+            }
+        }
+
+        if (options.isExternalStylesheet()) {
+            writeStylesheet(outputDir, report);
+        }
+
+        List<String> clientAssets = new ArrayList<>();
+        if (options.isSearch()) {
+            clientAssets.addAll(List.of("assets/js/search.js", "assets/css/search.css"));
+        }
+        if (options.isNavigationFragment()) {
+            clientAssets.add("assets/js/nav.js");
+        }
+        for (String asset : clientAssets) {
+            Path target = outputDir.resolve(asset);
+            Files.createDirectories(target.getParent());
+            try (var stream = getClass().getResourceAsStream("/" + asset)) {
+                report.addBytesWritten(Files.copy(stream, target, StandardCopyOption.REPLACE_EXISTING));
             }
         }
 
         System.out.println("   Copied assets");
     }
 
-    private String toUrlSafe(String name) {
-        return name.toLowerCase()
-                .replaceAll("\\s+", "-")
-                .replaceAll("[^a-z0-9-]", "");
+    /**
+     * Publishes the shared sidebar under its content hash and drops the
+     * ones earlier builds left behind.
+     */
+    private void writeNavigation(Path outputDir, NavigationModel navigation, BuildReport report) throws IOException {
+        Path fragmentFile = outputDir.resolve(navigation.getFragmentPath());
+        Path navDir = fragmentFile.getParent();
+        Files.createDirectories(navDir);
+
+        try (DirectoryStream<Path> previous = Files.newDirectoryStream(navDir, "sidebar.*.html")) {
+            for (Path file : previous) {
+                if (!file.equals(fragmentFile)) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        if (!Files.exists(fragmentFile)) {
+            byte[] fragment = navigation.getFragment();
+            Files.write(fragmentFile, fragment);
+            report.addBytesWritten(fragment.length);
+        }
+    }
+
+    private void writeStylesheet(Path outputDir, BuildReport report) throws IOException {
+        Path stylesheetFile = outputDir.resolve(templateService.getStylesheetPath());
+        Path cssDir = stylesheetFile.getParent();
+        Files.createDirectories(cssDir);
+
+        // Drop stylesheets left behind by earlier builds with different content
+        try (DirectoryStream<Path> previous = Files.newDirectoryStream(cssDir, "site.*.css")) {
+            for (Path file : previous) {
+                if (!file.equals(stylesheetFile)) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        if (!Files.exists(stylesheetFile)) {
+            writePage(stylesheetFile, templateService.getStylesheet(), report);
+        }
     }
-}
\ No newline at end of file
+}
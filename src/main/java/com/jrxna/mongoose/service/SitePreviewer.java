@@ -0,0 +1,327 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.BuildOptions;
+import com.jrxna.mongoose.model.MarkdownFile;
+import com.jrxna.mongoose.model.Section;
+import com.jrxna.mongoose.server.DevServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Preview mode: serves the site straight from its sources without building
+ * it first. Startup only reads titles and dates, which the sidebar needs;
+ * each page is parsed and rendered the first time it is requested and kept
+ * in a byte-bounded LRU cache.
+ *
+ * Editing a page drops only that page from the cache. Changing its title or
+ * date changes the sidebar of every page, so the whole cache goes.
+ */
+@Service
+public class SitePreviewer {
+
+    private static final long CACHE_BYTES = 64L << 20;
+    private static final long DEBOUNCE_MILLIS = 30;
+
+    private final MarkdownParserService markdownParser;
+    private final TemplateService templateService;
+
+    @Autowired
+    public SitePreviewer(MarkdownParserService markdownParser, TemplateService templateService) {
+        this.markdownParser = markdownParser;
+        this.templateService = templateService;
+    }
+
+    public void preview(String inputPath, BuildOptions options) throws IOException, InterruptedException {
+        Path inputDir = Paths.get(inputPath).toAbsolutePath().normalize();
+        if (!Files.isDirectory(inputDir)) {
+            throw new IOException("Input directory does not exist: " + inputPath);
+        }
+        if (options.isSearch()) {
+            // The index covers every page, which is what preview avoids building
+            System.out.println("   --search is ignored in preview mode");
+            options.setSearch(false);
+        }
+
+        templateService.loadLayout(options);
+        markdownParser.configure(options);
+        long start = System.nanoTime();
+        Preview preview = new Preview(scan(inputDir, options), options);
+
+        DevServer server = new DevServer(preview::read, options.getPort());
+        server.start();
+        System.out.println("🌐 Previewing " + preview.site.pageCount() + " pages on http://localhost:"
+                + server.getPort() + "/ (ready in " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        System.out.println("👀 Watching " + inputDir + " for changes");
+
+        try (WatchService watchService = inputDir.getFileSystem().newWatchService()) {
+            registerTree(inputDir, watchService);
+
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean rescan = drain(watchService.take(), watchService, changed);
+
+                WatchKey next;
+                while ((next = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    rescan |= drain(next, watchService, changed);
+                }
+
+                if (!rescan && changed.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    if (rescan || !preview.update(changed)) {
+                        preview.replace(scan(inputDir, options));
+                    }
+                    server.reload();
+                } catch (IOException e) {
+                    System.err.println("\n❌ Preview update failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Finds the sources and reads their metadata, on all threads of the
+     * build options.
+     */
+    private Site scan(Path inputDir, BuildOptions options) throws IOException {
+        List<Section> sections = SiteScanner.scan(inputDir, options.getThreads());
+        List<MarkdownFile> files = sections.stream()
+                .flatMap(section -> section.getFiles().stream())
+                .collect(Collectors.toList());
+
+        ForkJoinPool pool = options.isParallel() ? new ForkJoinPool(options.getThreads()) : null;
+        try {
+            if (pool == null) {
+                for (MarkdownFile file : files) {
+                    markdownParser.parseMetadata(file);
+                }
+            } else {
+                pool.submit(() -> files.parallelStream().forEach(file -> {
+                    try {
+                        markdownParser.parseMetadata(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading metadata", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read metadata: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        SiteScanner.sort(sections);
+        return new Site(sections, templateService.buildNavigation(sections));
+    }
+
+    /**
+     * Collects the markdown files touched by the events of a key. Returns
+     * true when the set of sources may have changed in a way only a rescan
+     * can tell: lost events, or directories coming and going.
+     */
+    private boolean drain(WatchKey key, WatchService watchService, Set<Path> changed) throws IOException {
+        Path dir = (Path) key.watchable();
+        boolean rescan = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                rescan = true;
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            if (path.toString().endsWith(".md")) {
+                changed.add(path);
+            } else if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                registerTree(path, watchService);
+                rescan = true;
+            } else if (event.kind() == ENTRY_DELETE || path.endsWith(IgnoreRules.FILE_NAME)) {
+                rescan = true;
+            }
+        }
+
+        key.reset();
+        return rescan;
+    }
+
+    private void registerTree(Path root, WatchService watchService) throws IOException {
+        List<Path> dirs;
+        try (Stream<Path> tree = Files.walk(root)) {
+            dirs = tree.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        for (Path dir : dirs) {
+            dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        }
+    }
+
+    /**
+     * Sorted sources and their sidebar, replaced as a whole whenever the
+     * sidebar changes.
+     */
+    private static final class Site {
+        final List<Section> sections;
+        final NavigationModel navigation;
+        final Map<String, MarkdownFile> byOutputPath = new HashMap<>();
+        final Map<Path, MarkdownFile> bySource = new HashMap<>();
+        final MarkdownFile first;
+
+        Site(List<Section> sections, NavigationModel navigation) {
+            this.sections = sections;
+            this.navigation = navigation;
+            for (Section section : sections) {
+                for (MarkdownFile file : section.getFiles()) {
+                    byOutputPath.put(file.getOutputPath(), file);
+                    bySource.put(Paths.get(file.getFilePath()).toAbsolutePath().normalize(), file);
+                }
+            }
+            this.first = sections.isEmpty() || sections.get(0).getFiles().isEmpty()
+                    ? null
+                    : sections.get(0).getFiles().get(0);
+        }
+
+        int pageCount() {
+            return byOutputPath.size();
+        }
+    }
+
+    private final class Preview {
+        private final BuildOptions options;
+        private final PageCache cache = new PageCache(CACHE_BYTES);
+        private final byte[] stylesheet = templateService.getStylesheet().getBytes(StandardCharsets.UTF_8);
+        private volatile Site site;
+
+        Preview(Site site, BuildOptions options) {
+            this.site = site;
+            this.options = options;
+        }
+
+        byte[] read(String path) throws IOException {
+            if (path.equals(site.navigation.getFragmentPath())) {
+                return site.navigation.getFragment();
+            }
+            if (path.startsWith("assets/")) {
+                return asset(path);
+            }
+
+            // Read before the site, so a page rendered from a site that is
+            // replaced meanwhile is not cached
+            long generation = cache.generation();
+            Site current = site;
+            MarkdownFile source = path.equals("index.html") ? current.first : current.byOutputPath.get(path);
+            if (source == null) {
+                return null;
+            }
+
+            byte[] page = cache.get(path);
+            if (page == null) {
+                page = render(source, path, current.navigation);
+                if (page != null) {
+                    cache.put(path, page, generation);
+                }
+            }
+            return page;
+        }
+
+        private byte[] render(MarkdownFile source, String outputPath, NavigationModel navigation) throws IOException {
+            // A fresh copy, since requests for the same page can render it concurrently
+            MarkdownFile file = new MarkdownFile();
+            file.setFilePath(source.getFilePath());
+            file.setOutputPath(outputPath);
+            try {
+                markdownParser.parseMarkdown(file);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            PageBuffer html = new PageBuffer();
+            templateService.renderPage(file, navigation, options, html);
+            return html.toByteArray();
+        }
+
+        private byte[] asset(String path) throws IOException {
+            if (path.equals(templateService.getStylesheetPath())) {
+                return stylesheet;
+            }
+            if (path.contains("..")) {
+                return null;
+            }
+            try (InputStream in = getClass().getResourceAsStream("/" + path)) {
+                return in == null ? null : in.readAllBytes();
+            }
+        }
+
+        /**
+         * Applies edits to known pages. Returns false if a source was added
+         * or removed, which needs a rescan.
+         */
+        boolean update(Set<Path> changed) throws IOException {
+            Site current = site;
+            Map<MarkdownFile, MarkdownFile> moved = new HashMap<>();
+
+            for (Path path : changed) {
+                MarkdownFile known = current.bySource.get(path.toAbsolutePath().normalize());
+                if (known == null || !Files.exists(path)) {
+                    return false;
+                }
+
+                MarkdownFile edited = new MarkdownFile();
+                edited.setFilePath(known.getFilePath());
+                edited.setOutputPath(known.getOutputPath());
+                markdownParser.parseMetadata(edited);
+
+                if (Objects.equals(edited.getTitle(), known.getTitle())
+                        && Objects.equals(edited.getDate(), known.getDate())) {
+                    cache.invalidate(known.getOutputPath());
+                    if (known == current.first) {
+                        cache.invalidate("index.html");
+                    }
+                } else {
+                    moved.put(known, edited);
+                }
+            }
+
+            if (!moved.isEmpty()) {
+                // Same sources with new metadata: re-sort what is known
+                // instead of reading every file again
+                List<Section> sections = new ArrayList<>();
+                for (Section section : current.sections) {
+                    Section copy = new Section(section.getTitle());
+                    for (MarkdownFile file : section.getFiles()) {
+                        copy.addFile(moved.getOrDefault(file, file));
+                    }
+                    sections.add(copy);
+                }
+                SiteScanner.sort(sections);
+                replace(new Site(sections, templateService.buildNavigation(sections)));
+            }
+            return true;
+        }
+
+        void replace(Site next) {
+            site = next;
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.MarkdownFile;
+import com.jrxna.mongoose.model.Section;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the markdown sources of a site and puts them in sidebar order.
+ * Shared by full builds and the preview server.
+ *
+ * Every directory with pages becomes a section, at any depth; nested ones
+ * are titled by their path. Hidden entries and anything excluded by a
+ * .mongooseignore file are skipped. Subdirectories are listed in parallel
+ * when more than one thread is given, which pays off on network
+ * filesystems where each listing is a round trip.
+ */
+final class SiteScanner {
+
+    private SiteScanner() {}
+
+    static List<Section> scan(Path root, int threads) throws IOException {
+        Object rootKey = Files.readAttributes(root, BasicFileAttributes.class).fileKey();
+        DirectoryScan scan = new DirectoryScan(root, "", "", null, IgnoreRules.NONE,
+                rootKey != null ? List.of(rootKey) : List.of(), threads > 1);
+
+        if (threads <= 1) {
+            try {
+                return scan.compute();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(scan).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning " + root, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw new IOException("Failed to scan " + root + ": " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Orders pages by date within their section and sections by their
+     * newest page. Needs the dates, so runs after the metadata pass.
+     */
+    static void sort(List<Section> sections) {
+        // Sort files within each section (oldest first)
+        for (Section section : sections) {
+            section.getFiles().sort((f1, f2) -> f1.getDate().compareTo(f2.getDate()));
+        }
+
+        // Sort sections by newest date in each section (newest sections first)
+        sections.sort((s1, s2) -> {
+            LocalDate newest1 = s1.getFiles().stream()
+                    .map(MarkdownFile::getDate)
+                    .max(LocalDate::compareTo)
+                    .orElse(LocalDate.MIN);
+            LocalDate newest2 = s2.getFiles().stream()
+                    .map(MarkdownFile::getDate)
+                    .max(LocalDate::compareTo)
+                    .orElse(LocalDate.MIN);
+            return newest2.compareTo(newest1); // Reverse order - newest first
+        });
+    }
+
+    private static String formatSectionName(String dirName) {
+        String name = Arrays.stream(dirName.split("[-_]"))
+                .filter(word -> !word.isEmpty())
+                .map(word -> word.substring(0, 1).toUpperCase() + word.substring(1))
+                .collect(Collectors.joining(" "));
+        return name.isEmpty() ? dirName : name;
+    }
+
+    private static String toUrlSafe(String name) {
+        return name.toLowerCase()
+                .replaceAll("\\s+", "-")
+                .replaceAll("[^a-z0-9-]", "");
+    }
+
+    /**
+     * Lists one directory: its own pages become a section, followed by the
+     * sections found below it, in name order.
+     */
+    private static final class DirectoryScan extends RecursiveTask<List<Section>> {
+        private final Path dir;
+        private final String relativePath;
+        private final String outputDir;
+        private final String title;
+        private final IgnoreRules rules;
+        // File keys of this directory and its parents, to stop at symlink loops
+        private final List<Object> ancestors;
+        private final boolean parallel;
+
+        DirectoryScan(Path dir, String relativePath, String outputDir, String title, IgnoreRules rules,
+                List<Object> ancestors, boolean parallel) {
+            this.dir = dir;
+            this.relativePath = relativePath;
+            this.outputDir = outputDir;
+            this.title = title;
+            this.rules = rules;
+            this.ancestors = ancestors;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected List<Section> compute() {
+            try {
+                return scanDirectory();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<Section> scanDirectory() throws IOException {
+            List<Path> entries = new ArrayList<>();
+            boolean hasIgnoreFile = false;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    String name = entry.getFileName().toString();
+                    if (name.equals(IgnoreRules.FILE_NAME)) {
+                        hasIgnoreFile = true;
+                    } else if (!name.startsWith(".")) {
+                        // Hidden files and directories: .git, .DS_Store, editor swap files
+                        entries.add(entry);
+                    }
+                }
+            }
+            entries.sort(null);
+            IgnoreRules dirRules = hasIgnoreFile ? rules.with(dir.resolve(IgnoreRules.FILE_NAME), relativePath) : rules;
+
+            Section section = new Section(title != null ? title : "Documentation");
+            List<DirectoryScan> subdirectories = new ArrayList<>();
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                String path = relativePath.isEmpty() ? name : relativePath + "/" + name;
+
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // Deleted since the listing, or a dangling symlink
+                    continue;
+                }
+                if (dirRules.ignores(path, name, attributes.isDirectory())) {
+                    continue;
+                }
+
+                if (attributes.isDirectory()) {
+                    Object key = attributes.fileKey();
+                    if (key != null && ancestors.contains(key)) {
+                        continue;
+                    }
+                    List<Object> below = new ArrayList<>(ancestors);
+                    if (key != null) {
+                        below.add(key);
+                    }
+                    subdirectories.add(new DirectoryScan(entry, path,
+                            outputDir.isEmpty() ? toUrlSafe(name) : outputDir + "/" + toUrlSafe(name),
+                            title == null ? formatSectionName(name) : title + " / " + formatSectionName(name),
+                            dirRules, below, parallel));
+                } else if (attributes.isRegularFile() && name.endsWith(".md")) {
+                    MarkdownFile file = new MarkdownFile();
+                    file.setFilePath(entry.toString());
+
+                    // Use URL-safe folder names in output path
+                    String fileName = name.replace(".md", ".html");
+                    file.setOutputPath(outputDir.isEmpty() ? fileName : outputDir + "/" + fileName);
+                    section.addFile(file);
+                }
+            }
+
+            List<Section> sections = new ArrayList<>();
+            if (!section.getFiles().isEmpty()) {
+                sections.add(section);
+            }
+            if (parallel) {
+                invokeAll(subdirectories);
+            }
+            for (DirectoryScan subdirectory : subdirectories) {
+                sections.addAll(parallel ? subdirectory.join() : subdirectory.compute());
+            }
+            return sections;
+        }
+    }
+}
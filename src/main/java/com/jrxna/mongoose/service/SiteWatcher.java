@@ -0,0 +1,119 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.BuildOptions;
+import com.jrxna.mongoose.server.DevServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watch mode: serves the output directory, rebuilds incrementally whenever
+ * the input tree changes and reloads open browsers afterwards.
+ */
+@Service
+public class SiteWatcher {
+
+    // Editors save in bursts (temp file, rename, attribute change); wait for quiet
+    private static final long DEBOUNCE_MILLIS = 30;
+
+    private final SiteGeneratorService generator;
+
+    @Autowired
+    public SiteWatcher(SiteGeneratorService generator) {
+        this.generator = generator;
+    }
+
+    public void watch(String inputPath, String outputPath, BuildOptions options) throws IOException, InterruptedException {
+        Path inputDir = Paths.get(inputPath).toAbsolutePath().normalize();
+        Path outputDir = Paths.get(outputPath).toAbsolutePath().normalize();
+        options.setIncremental(true);
+
+        DevServer server = new DevServer(outputDir, options.getPort());
+        server.start();
+        System.out.println("\n👀 Watching " + inputDir + " for changes");
+        System.out.println("🌐 Serving http://localhost:" + server.getPort() + "/");
+
+        try (WatchService watchService = inputDir.getFileSystem().newWatchService()) {
+            registerTree(inputDir, outputDir, watchService);
+
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean relevant = drain(key, outputDir, watchService);
+
+                WatchKey next;
+                while ((next = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= drain(next, outputDir, watchService);
+                }
+
+                if (!relevant) {
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    generator.generateSite(inputPath, outputPath, options);
+                    server.reload();
+                    System.out.println("\n🔁 Rebuilt in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                } catch (IOException e) {
+                    System.err.println("\n❌ Rebuild failed: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // A bug rather than bad input, but the next edit may still build
+                    System.err.println("\n❌ Rebuild failed: " + e);
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Consumes the events of a key and re-arms it. Returns whether any of
+     * them touched the input tree rather than the output written into it.
+     */
+    private boolean drain(WatchKey key, Path outputDir, WatchService watchService) throws IOException {
+        Path dir = (Path) key.watchable();
+        boolean relevant = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                relevant = true;
+                continue;
+            }
+
+            Path changed = dir.resolve((Path) event.context());
+            if (changed.startsWith(outputDir)) {
+                continue;
+            }
+            relevant = true;
+
+            // New directories have to be watched too
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                registerTree(changed, outputDir, watchService);
+            }
+        }
+
+        key.reset();
+        return relevant;
+    }
+
+    private void registerTree(Path root, Path outputDir, WatchService watchService) throws IOException {
+        List<Path> dirs;
+        try (Stream<Path> tree = Files.walk(root)) {
+            dirs = tree.filter(Files::isDirectory)
+                    .filter(dir -> !dir.startsWith(outputDir))
+                    .collect(Collectors.toList());
+        }
+        for (Path dir : dirs) {
+            dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.jrxna.mongoose.service;
+
+import com.jrxna.mongoose.model.MarkdownFile;
+import com.jrxna.mongoose.model.Section;
+import com.jrxna.mongoose.model.SiteConfig;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Writes sitemap.xml and Atom feeds, the indexes crawlers and feed readers
+ * start from. Both are streamed straight from the sorted sections to disk,
+ * entry by entry, so memory does not grow with the site.
+ */
+@Service
+public class SitemapService {
+
+    public static final String SITEMAP_FILE = "sitemap.xml";
+    public static final String FEED_FILE = "feed.xml";
+    public static final String FEED_DIR = "feeds";
+
+    // Limits of the sitemap protocol for one file; more go into an index
+    private static final int MAX_URLS = 50_000;
+    private static final long MAX_BYTES = 50L * 1024 * 1024;
+
+    private static final int FEED_ENTRIES = 20;
+
+    private static final byte[] URLSET_START = utf8("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <urlset xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+            """);
+    private static final byte[] URLSET_END = utf8("</urlset>\n");
+
+    private final SiteConfig config = new SiteConfig();
+
+    /**
+     * The site's public address, ending in a slash: the given one, or the
+     * configured domain.
+     */
+    public String baseUrl(String override) {
+        String url = override != null ? override : "https://" + config.getFullDomain() + "/";
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    /**
+     * Writes one URL per page, with the front-matter date as lastmod.
+     * A site over the protocol limits gets sitemap-1.xml, sitemap-2.xml and
+     * so on, with sitemap.xml as their index. Returns the bytes written.
+     */
+    public long writeSitemaps(List<Section> sections, Path outputDir, String baseUrl) throws IOException {
+        deleteMatching(outputDir, "sitemap-*.xml*");
+
+        LocalDate newest = LocalDate.MIN;
+        for (Section section : sections) {
+            for (MarkdownFile file : section.getFiles()) {
+                newest = max(newest, file.getDate());
+            }
+        }
+
+        List<LocalDate> shardDates = new ArrayList<>();
+        long written;
+        try (SitemapShards shards = new SitemapShards(outputDir, shardDates)) {
+            if (!sections.isEmpty()) {
+                shards.add("<url><loc>" + loc(baseUrl, "") + "</loc>" + lastmod(newest) + "</url>\n", newest);
+            }
+            for (Section section : sections) {
+                for (MarkdownFile file : section.getFiles()) {
+                    shards.add("<url><loc>" + loc(baseUrl, file.getOutputPath()) + "</loc>"
+                            + lastmod(file.getDate()) + "</url>\n", file.getDate());
+                }
+            }
+            written = shards.finish();
+        }
+
+        Path sitemap = outputDir.resolve(SITEMAP_FILE);
+        if (shardDates.size() == 1) {
+            Files.move(outputDir.resolve("sitemap-1.xml"), sitemap, StandardCopyOption.REPLACE_EXISTING);
+            return written;
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(sitemap))) {
+            out.write(utf8("""
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <sitemapindex xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                    """));
+            for (int i = 0; i < shardDates.size(); i++) {
+                out.write(utf8("<sitemap><loc>" + loc(baseUrl, "sitemap-" + (i + 1) + ".xml") + "</loc>"
+                        + lastmod(shardDates.get(i)) + "</sitemap>\n"));
+            }
+            out.write(utf8("</sitemapindex>\n"));
+        }
+        return written + Files.size(sitemap);
+    }
+
+    /**
+     * Writes feed.xml with the newest pages of the site, and one feed per
+     * section under feeds/. Returns the bytes written.
+     */
+    public long writeFeeds(List<Section> sections, Path outputDir, String baseUrl) throws IOException {
+        Path feedDir = outputDir.resolve(FEED_DIR);
+        Files.createDirectories(feedDir);
+        Set<String> written = new HashSet<>();
+        long bytes = 0;
+
+        // Newest first; a bounded heap keeps only what the feed shows
+        Comparator<MarkdownFile> byDate = Comparator.comparing(MarkdownFile::getDate)
+                .thenComparing(MarkdownFile::getOutputPath, Comparator.reverseOrder());
+        PriorityQueue<MarkdownFile> newest = new PriorityQueue<>(byDate);
+
+        Set<String> slugs = new HashSet<>();
+        for (Section section : sections) {
+            List<MarkdownFile> files = section.getFiles();
+            for (MarkdownFile file : files) {
+                newest.add(file);
+                if (newest.size() > FEED_ENTRIES) {
+                    newest.poll();
+                }
+            }
+
+            // Sections list their pages oldest first
+            List<MarkdownFile> recent = new ArrayList<>(files.subList(Math.max(0, files.size() - FEED_ENTRIES),
+                    files.size()));
+            Collections.reverse(recent);
+
+            String slug = slug(section.getTitle());
+            for (int n = 2; !slugs.add(slug); n++) {
+                slug = slug(section.getTitle()) + "-" + n;
+            }
+            bytes += writeFeed(feedDir.resolve(slug + ".xml"), config.getSiteName() + ": " + section.getTitle(),
+                    FEED_DIR + "/" + slug + ".xml", recent, baseUrl);
+            written.add(slug + ".xml");
+        }
+
+        List<MarkdownFile> recent = new ArrayList<>(newest);
+        recent.sort(byDate.reversed());
+        bytes += writeFeed(outputDir.resolve(FEED_FILE), config.getSiteName(), FEED_FILE, recent, baseUrl);
+
+        // Feeds of sections that are gone, and their gzip sidecars
+        try (DirectoryStream<Path> feeds = Files.newDirectoryStream(feedDir)) {
+            for (Path feed : feeds) {
+                String name = feed.getFileName().toString();
+                if (!written.contains(name) && !written.contains(name.replaceFirst("\\.gz$", ""))) {
+                    Files.delete(feed);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private long writeFeed(Path feed, String title, String selfPath, List<MarkdownFile> entries, String baseUrl)
+            throws IOException {
+        String updated = entries.isEmpty() ? timestamp(LocalDate.now()) : timestamp(entries.get(0).getDate());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(feed))) {
+            out.write(utf8("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<feed xmlns=\"http://www.w3.org/2005/Atom\">\n"
+                    + "  <title>" + escape(title) + "</title>\n"
+                    + "  <id>" + escape(baseUrl + selfPath) + "</id>\n"
+                    + "  <link rel=\"self\" href=\"" + escape(baseUrl + selfPath) + "\"/>\n"
+                    + "  <link href=\"" + escape(baseUrl) + "\"/>\n"
+                    + "  <updated>" + updated + "</updated>\n"
+                    + "  <author><name>" + escape(config.getSiteName()) + "</name></author>\n"));
+            for (MarkdownFile file : entries) {
+                String link = loc(baseUrl, file.getOutputPath());
+                out.write(utf8("  <entry>\n"
+                        + "    <title>" + escape(file.getTitle()) + "</title>\n"
+                        + "    <link href=\"" + link + "\"/>\n"
+                        + "    <id>" + link + "</id>\n"
+                        + "    <updated>" + timestamp(file.getDate()) + "</updated>\n"
+                        + "  </entry>\n"));
+            }
+            out.write(utf8("</feed>\n"));
+        }
+        return Files.size(feed);
+    }
+
+    private static String loc(String baseUrl, String path) {
+        return escape(baseUrl + encodePath(path));
+    }
+
+    private static String lastmod(LocalDate date) {
+        return date != null && !date.equals(LocalDate.MIN) ? "<lastmod>" + date + "</lastmod>" : "";
+    }
+
+    private static void deleteMatching(Path dir, String glob) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // Percent-encodes everything but unreserved characters and slashes
+    private static String encodePath(String path) {
+        StringBuilder encoded = new StringBuilder(path.length());
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || c == '/') {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("'", "&apos;");
+    }
+
+    private static String slug(String title) {
+        String slug = title.toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+        return slug.isEmpty() ? "section" : slug;
+    }
+
+    private static String timestamp(LocalDate date) {
+        return date + "T00:00:00Z";
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return b != null && b.isAfter(a) ? b : a;
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Numbered sitemap files, each closed and the next one opened when
+     * another URL would break a protocol limit. Records the newest date of
+     * every file for the index.
+     */
+    private static final class SitemapShards implements AutoCloseable {
+        private final Path outputDir;
+        private final List<LocalDate> shardDates;
+        private OutputStream out;
+        private int urls;
+        private long bytes;
+        private long total;
+
+        SitemapShards(Path outputDir, List<LocalDate> shardDates) {
+            this.outputDir = outputDir;
+            this.shardDates = shardDates;
+        }
+
+        void add(String url, LocalDate lastmod) throws IOException {
+            byte[] entry = utf8(url);
+            if (out == null || urls == MAX_URLS || bytes + entry.length + URLSET_END.length > MAX_BYTES) {
+                endFile();
+                open();
+            }
+            out.write(entry);
+            urls++;
+            bytes += entry.length;
+            int last = shardDates.size() - 1;
+            shardDates.set(last, max(shardDates.get(last), lastmod));
+        }
+
+        /**
+         * Ends the last file; an empty site still gets one. Returns the
+         * bytes written in total.
+         */
+        long finish() throws IOException {
+            if (shardDates.isEmpty()) {
+                open();
+            }
+            endFile();
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        private void endFile() throws IOException {
+            if (out != null) {
+                out.write(URLSET_END);
+                out.close();
+                total += bytes + URLSET_END.length;
+                out = null;
+            }
+        }
+
+        private void open() throws IOException {
+            shardDates.add(LocalDate.MIN);
+            out = new BufferedOutputStream(Files.newOutputStream(
+                    outputDir.resolve("sitemap-" + shardDates.size() + ".xml")));
+            out.write(URLSET_START);
+            urls = 0;
+            bytes = URLSET_START.length;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.jrxna.mongoose.service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A build directory next to the live output that is swapped in once the
+ * build is complete, so a site being served never shows half a build.
+ *
+ * The output path becomes a symbolic link to the current build, and a swap
+ * renames a new link over it, which readers see happen all at once. Where
+ * symbolic links are not available, or the first time a plain directory is
+ * replaced, the swap is two renames in quick succession instead.
+ *
+ * Files with the same bytes as in the live build are hard links to it, so
+ * they keep their inode and modification time and syncing tools skip them.
+ *
+ * Only builds made this way are ever deleted. An output path that is a link
+ * to anything else is refused, and a plain directory is only replaced when
+ * the new build has every file in it, so nothing the generator did not write
+ * (a .git, a CNAME) goes with it.
+ */
+final class StagedOutput {
+
+    private static final DateTimeFormatter BUILD_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int LISTED_FILES = 5;
+
+    private final Path target;
+    private final Path previous;
+    private final Path directory;
+    // The live output is a plain directory, not yet one of our builds
+    private final boolean replacingDirectory;
+    private boolean published;
+
+    private StagedOutput(Path target, Path previous, Path directory, boolean replacingDirectory) {
+        this.target = target;
+        this.previous = previous;
+        this.directory = directory;
+        this.replacingDirectory = replacingDirectory;
+    }
+
+    /**
+     * Creates an empty build directory beside the output path. Fails if the
+     * output path is something a swap must not replace.
+     */
+    static StagedOutput create(Path target) throws IOException {
+        target = target.toAbsolutePath().normalize();
+        Path parent = target.getParent();
+        Files.createDirectories(parent);
+
+        Path previous = null;
+        boolean replacingDirectory = false;
+        if (Files.isSymbolicLink(target)) {
+            Path linked = parent.resolve(Files.readSymbolicLink(target)).normalize();
+            if (!isBuildOf(target, linked)) {
+                throw new IOException("--atomic would replace " + target + ", a link to " + linked
+                        + "; build into " + linked + " itself, or remove the link");
+            }
+            previous = Files.isDirectory(linked) ? linked : null;
+        } else if (Files.isDirectory(target)) {
+            previous = target;
+            replacingDirectory = true;
+        } else if (Files.exists(target)) {
+            throw new IOException("Output path is not a directory: " + target);
+        }
+
+        String name = "." + target.getFileName() + "." + LocalDateTime.now().format(BUILD_NAME);
+        Path directory = parent.resolve(name);
+        for (int n = 2; ; n++) {
+            try {
+                Files.createDirectory(directory);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                directory = parent.resolve(name + "-" + n);
+            }
+        }
+        return new StagedOutput(target, previous, directory, replacingDirectory);
+    }
+
+    // Where the build writes to
+    Path getDirectory() { return directory; }
+
+    // The live build, or null for the first one
+    Path getPrevious() { return previous; }
+
+    /**
+     * Replaces files that came out the same as in the live build with hard
+     * links to it. Returns the number of files now shared with it.
+     */
+    int linkUnchanged() throws IOException {
+        if (previous == null) {
+            return 0;
+        }
+        List<Path> files;
+        try (Stream<Path> tree = Files.walk(directory)) {
+            files = tree.filter(Files::isRegularFile).toList();
+        }
+
+        int linked = 0;
+        for (Path file : files) {
+            Path old = previous.resolve(directory.relativize(file).toString());
+            if (!Files.isRegularFile(old, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            if (Files.isSameFile(file, old)) {
+                linked++;
+            } else if (Files.size(file) == Files.size(old) && Files.mismatch(file, old) < 0) {
+                Files.delete(file);
+                try {
+                    Files.createLink(file, old);
+                } catch (UnsupportedOperationException | IOException e) {
+                    // Across filesystems or without hard links; keep a copy
+                    Files.copy(old, file, StandardCopyOption.COPY_ATTRIBUTES);
+                    continue;
+                }
+                linked++;
+            }
+        }
+        return linked;
+    }
+
+    /**
+     * Makes the build the live output and removes the one it replaced.
+     * Fails, leaving the live output alone, when that is a plain directory
+     * with files the new build does not have.
+     */
+    void publish() throws IOException {
+        if (replacingDirectory) {
+            List<String> foreign = filesNotIn(previous, directory);
+            if (!foreign.isEmpty()) {
+                String listed = String.join(", ", foreign.subList(0, Math.min(foreign.size(), LISTED_FILES)))
+                        + (foreign.size() > LISTED_FILES ? " and " + (foreign.size() - LISTED_FILES) + " more" : "");
+                throw new IOException("--atomic would delete " + foreign.size() + " file(s) in " + target
+                        + " that this build does not write: " + listed
+                        + ". Move them out of the output directory, or build without --atomic");
+            }
+        }
+
+        Path parent = target.getParent();
+        Path old = null;
+        if (Files.isSymbolicLink(target)) {
+            // Checked in create() to be one of ours
+            old = previous;
+        } else if (Files.exists(target)) {
+            // A plain directory cannot be replaced in one step; move it aside first
+            old = parent.resolve(directory.getFileName() + ".old");
+            Files.move(target, old, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        if (!swapLink()) {
+            if (Files.isSymbolicLink(target)) {
+                Files.delete(target);
+            }
+            Files.move(directory, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        published = true;
+
+        if (old != null) {
+            deleteTree(old);
+        }
+    }
+
+    /**
+     * Deletes the build directory unless it was published, as after a
+     * failed build.
+     */
+    void discard() throws IOException {
+        if (!published) {
+            deleteTree(directory);
+        }
+    }
+
+    // A build directory this class made for the output path, next to it
+    private static boolean isBuildOf(Path target, Path directory) {
+        Pattern name = Pattern.compile(Pattern.quote("." + target.getFileName() + ".") + "[0-9]{8}-[0-9]{6}(-[0-9]+)?");
+        return target.getParent().equals(directory.getParent())
+                && name.matcher(directory.getFileName().toString()).matches();
+    }
+
+    /**
+     * Files under the old directory with no counterpart in the new build,
+     * other than the generator's own caches and compressed copies, which a
+     * build with other options may have left.
+     */
+    private static List<String> filesNotIn(Path old, Path build) throws IOException {
+        List<String> missing = new ArrayList<>();
+        try (Stream<Path> tree = Files.walk(old)) {
+            for (Path file : tree.filter(path -> !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)).toList()) {
+                String path = old.relativize(file).toString();
+                String name = file.getFileName().toString();
+                if (!Files.exists(build.resolve(path), LinkOption.NOFOLLOW_LINKS)
+                        && !name.startsWith(".mongoose-")
+                        && !isSidecar(file)) {
+                    missing.add(path);
+                }
+            }
+        }
+        return missing;
+    }
+
+    private static boolean isSidecar(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(PrecompressionService.SUFFIX)
+                && Files.exists(file.resolveSibling(name.substring(0, name.length() - PrecompressionService.SUFFIX.length())));
+    }
+
+    // Points the output path at the build by renaming a new link over it
+    private boolean swapLink() throws IOException {
+        Path link = target.resolveSibling("." + target.getFileName() + ".link");
+        try {
+            Files.deleteIfExists(link);
+            Files.createSymbolicLink(link, directory.getFileName());
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            return false;
+        }
+        Files.move(link, target, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        try (Stream<Path> tree = Files.walk(root)) {
+            for (Path path : tree.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -2,468 +2,212 @@ package com.jrxna.mongoose.service;
 
 import com.jrxna.mongoose.model.*;
 import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class TemplateService {
 
     private final SiteConfig config = new SiteConfig();
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM dd, yyyy");
+    private static final BuildOptions DEFAULT_OPTIONS = new BuildOptions();
+
+    private static final byte[] TOC_START = utf8("                <ul class=\"toc-list\">\n");
+    private static final byte[] TOC_ITEM_START = utf8("                    <li class=\"toc-item\"><a href=\"#");
+    private static final byte[] TOC_ITEM_CLASS = utf8("\" class=\"toc-link ");
+    private static final byte[] TOC_ITEM_TEXT = utf8("\">");
+    private static final byte[] TOC_ITEM_END = utf8("</a></li>\n");
+    private static final byte[] TOC_END = utf8("                </ul>\n");
+
+    private static final byte[] NAV_START = utf8("                <div id=\"sidebar-nav\">\n");
+    private static final byte[] NAV_END = utf8("                </div>\n");
+
+    private static final byte[] SEARCH_BOX = utf8("""
+                            <div class="search">
+                                <input type="search" id="search-input" class="search-input" placeholder="Search notes" autocomplete="off" aria-label="Search notes">
+                                <ul id="search-results" class="search-results"></ul>
+                            </div>
+            """);
+
+    private final String stylesheet;
+    private final String stylesheetPath;
+    private final byte[] inlineStylesheet;
+    private final byte[] siteName = utf8(config.getSiteName());
+
+    // The built-in layout, and those given with --layout by path
+    private final PageTemplate defaultLayout;
+    private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+
+    public TemplateService() {
+        this.stylesheet = loadResource("/assets/css/site.css");
+        this.stylesheetPath = "assets/css/site." + fingerprint(stylesheet) + ".css";
+
+        // Indented to sit inside <head> like the rest of the page
+        StringBuilder inline = new StringBuilder("    <style>\n");
+        stylesheet.lines().forEach(line -> {
+            if (!line.isEmpty()) {
+                inline.append("        ").append(line);
+            }
+            inline.append('\n');
+        });
+        this.inlineStylesheet = utf8(inline.append("    </style>\n").toString());
+        this.defaultLayout = PageTemplate.compile(loadResource("/templates/layout.html"));
+    }
+
+    public String getStylesheet() { return stylesheet; }
+
+    // Content-hashed, so it can be served with immutable caching headers
+    public String getStylesheetPath() { return stylesheetPath; }
+
+    public NavigationModel buildNavigation(List<Section> sections) {
+        return NavigationModel.build(sections);
+    }
 
     public String generatePage(MarkdownFile file, List<Section> sections) {
+        return generatePage(file, buildNavigation(sections));
+    }
+
+    public String generatePage(MarkdownFile file, NavigationModel navigation) {
+        return generatePage(file, navigation, DEFAULT_OPTIONS);
+    }
+
+    public String generatePage(MarkdownFile file, NavigationModel navigation, BuildOptions options) {
+        PageBuffer html = new PageBuffer();
+        renderPage(file, navigation, options, html);
+        return html.toString();
+    }
+
+    /**
+     * Renders a page into the buffer through the compiled layout, without
+     * building the page as a String first.
+     */
+    public void renderPage(MarkdownFile file, NavigationModel navigation, BuildOptions options, PageBuffer html) {
         // Calculate relative path to root based on file depth
         String pathToRoot = calculatePathToRoot(file.getOutputPath());
 
-        StringBuilder html = new StringBuilder();
-
-        html.append("""
-                <!DOCTYPE html>
-                <html lang="en">
-                <head>
-                    <meta charset="UTF-8">
-                    <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                    <title>""").append(file.getTitle()).append(" | ").append(config.getSiteName()).append("""
-                </title>
-                    <link rel="icon" type="image/png" href=\"""").append(pathToRoot).append("""
-                    assets/images/Favicon.png">
-                        <style>
-                            * {
-                                margin: 0;
-                                padding: 0;
-                                box-sizing: border-box;
-                            }
-
-                            :root {
-                                --primary: #C74634;
-                                --bg-primary: #1A1A1A;
-                                --text-primary: #E5E5E5;
-                                --text-muted: #9CA3AF;
-                                --border: #2D2D2D;
-                            }
-
-                            body {
-                                font-family: Arial, Helvetica, sans-serif;
-                                background: var(--bg-primary);
-                                color: var(--text-primary);
-                                font-size: 14px;
-                                line-height: 1.6;
-                                display: flex;
-                                justify-content: center;
-                            }
-
-                            .page-wrapper {
-                                width: 100%;
-                                min-height: 100vh;
-                            }
-
-                            .container {
-                                display: grid;
-                                min-height: 100vh;
-                            }
-
-                            .header {
-                                display: flex;
-                                align-items: center;
-                                justify-content: space-between;
-                                padding: 0 24px;
-                                z-index: 100;
-                                position: fixed;
-                                inset: 0;
-                                height: 60px;
-                                border: 1px solid var(--border);
-                                border-top: none;
-                            }
-
-                            .header,
-                            .sidebar {
-                                background: var(--bg-primary);
-                            }
-
-                            .main-content,
-                            .toc {
-                                background: var(--bg-primary);
-                            }
-
-                            .logo {
-                                display: flex;
-                                align-items: center;
-                            }
-
-                            .videos-link {
-                                color: var(--text-primary);
-                                text-decoration: none;
-                                transition: all 0.2s;
-                            }
-
-                            .videos-link:hover,
-                            .menu-toggle-label:hover {
-                                color: var(--primary);
-                            }
-
-                            .menu-toggle-label {
-                                color: var(--text-primary);
-                                display: none;
-                            }
-
-                            .menu-toggle {
-                                display: none;
-                            }
-
-                            .sidebar-title {
-                                color: var(--text-primary);
-                                padding: 12px 24px;
-                                cursor: pointer;
-                                user-select: none;
-                                transition: all 0.2s;
-                            }
-
-                            .sidebar-title:hover {
-                                color: var(--primary);
-                            }
-
-                            details summary::-webkit-details-marker,
-                            details summary::marker {
-                                display: none;
-                            }
-
-                            details[open] .sidebar-title {
-                                background: var(--primary);
-                                color: var(--text-primary);
-                            }
-
-                            .note-list {
-                                list-style: none;
-                            }
-
-                            .note-link {
-                                display: block;
-                                padding: 12px 24px;
-                                color: var(--text-primary);
-                                text-decoration: none;
-                                transition: all 0.2s;
-                                border-left: 5px solid transparent;
-                            }
-
-                            .note-link:hover {
-                                color: var(--primary);
-                            }
-
-                            .note-link.active {
-                                color: var(--text-primary);
-                                border-left-color: var(--primary);
-                            }
-
-                            .content-header {
-                                margin-bottom: 12px;
-                            }
-
-                            .page-title {
-                                margin-top: 0;
-                                color: var(--primary);
-                            }
-
-                            .page-meta {
-                                color: var(--text-muted);
-                                font-size: 12px;
-                            }
-
-                            h1,
-                            h2,
-                            h3 {
-                                margin-bottom: 12px;
-                                color: var(--primary);
-                            }
-
-                            .content-body p {
-                                margin-bottom: 12px;
-                                color: var(--text-primary);
-                            }
-
-                            .content-body ul,
-                            .content-body ol {
-                                margin: 0px 0px 16px 32px;
-                            }
-
-                            .content-body li {
-                                color: var(--text-primary);
-                            }
-
-                            .content-body code {
-                                background: var(--bg-primary);
-                                padding: 2px 6px;
-                                border-radius: 4px;
-                                font-family: 'JetBrains';
-                                border: 1px solid var(--border);
-                            }
-
-                            .content-body blockquote {
-                                border-left: 5px solid var(--primary);
-                                padding-left: 12px;
-                                margin: 24px 0;
-                                color: var(--text-primary);
-                                font-style: italic;
-                            }
-
-                            .toc-list {
-                                list-style: none;
-                            }
-
-                            .toc-link {
-                                display: block;
-                                color: var(--text-muted);
-                                text-decoration: none;
-                                font-size: 12px;
-                                padding-bottom: 12px;
-                                transition: color 0.2s;
-                            }
-
-                            .toc-link:hover {
-                                color: var(--primary);
-                            }
-
-                            .toc-link.level-2 {
-                                padding-left: 0;
-                            }
-
-                            .toc-link.level-3 {
-                                padding-left: 12px;
-                            }
-
-                            .sidebar::-webkit-scrollbar,
-                            .main-content::-webkit-scrollbar,
-                            .toc::-webkit-scrollbar {
-                                display: none;
-                            }
-
-                            .sidebar,
-                            .main-content,
-                            .toc {
-                                scrollbar-width: none;
-                                -ms-overflow-style: none;
-                            }
-
-                            @media (min-width: 1280px) {
-                                .page-wrapper {
-                                    width: 1280px;
-                                    margin: 0 auto;
-                                }
-
-                                .container {
-                                    grid-template: "sidebar main toc" 1fr / 320px 640px 320px;
-                                }
-
-                                .header {
-                                    left: 50%;
-                                    transform: translateX(-50%);
-                                    width: 1280px;
-                                }
-
-                                .sidebar {
-                                    grid-area: sidebar;
-                                    padding: 84px 0 0;
-                                    overflow-y: auto;
-                                    height: 100vh;
-                                    border-left: 1px solid var(--border);
-                                    border-right: 1px solid var(--border);
-                                }
-
-                                .main-content {
-                                    grid-area: main;
-                                    padding: 84px 24px 24px;
-                                    overflow-y: auto;
-                                    height: 100vh;
-                                }
-
-                                .toc {
-                                    grid-area: toc;
-                                    padding: 84px 24px 24px;
-                                    overflow-y: auto;
-                                    height: 100vh;
-                                    border-left: 1px solid var(--border);
-                                    border-right: 1px solid var(--border);
-                                }
-                            }
-
-                            @media (max-width: 1280px) {
-                                .page-wrapper {
-                                    border-left: 1px solid var(--border);
-                                    border-right: 1px solid var(--border);
-                                }
-
-                                .container {
-                                    grid-template: "main" auto "toc" auto / 1fr;
-                                    padding-top: 60px;
-                                }
-
-                                .header {
-                                    display: grid;
-                                    grid-template-columns: 50px 1fr auto;
-                                    align-items: center;
-                                }
-
-                                .logo {
-                                    justify-content: center;
-                                }
-
-                                .menu-toggle-label {
-                                    display: block;
-                                }
-
-                                .sidebar {
-                                    position: fixed;
-                                    top: 60px;
-                                    left: 0;
-                                    width: 280px;
-                                    height: calc(100vh - 60px);
-                                    transform: translateX(-100%);
-                                    transition: transform 0.3s;
-                                    z-index: 150;
-                                    border-right: 1px solid var(--border);
-                                    overflow-y: auto;
-                                    padding: 24px 0;
-                                }
-
-                                #menu-toggle:checked~.sidebar {
-                                    transform: translateX(0);
-                                }
-
-                                .overlay {
-                                    display: none;
-                                    position: fixed;
-                                    top: 60px;
-                                    left: 0;
-                                    right: 0;
-                                    bottom: 0;
-                                    background: rgba(0, 0, 0, 0.5);
-                                    z-index: 149;
-                                    cursor: pointer;
-                                }
-
-                                #menu-toggle:checked~.overlay {
-                                    display: block;
-                                }
-
-                                .main-content {
-                                    grid-area: main;
-                                    padding: 32px 24px;
-                                    overflow-y: visible;
-                                    height: auto;
-                                }
-
-                                .toc {
-                                    grid-area: toc;
-                                    padding: 24px;
-                                    height: auto;
-                                    overflow-y: visible;
-                                    border-top: 1px solid var(--border);
-                                }
-                            }
-                        </style>
-                    </head>
-                    <body>
-                        <div class="page-wrapper">
-                            <div class="container">
-                                <input type="checkbox" id="menu-toggle" class="menu-toggle">
-                                <header class="header">
-                                    <label for="menu-toggle" class="menu-toggle-label">Notes</label>
-                                    <div class="logo">
-                                        <a href="https://jrxna.com">
-                                            <img src=\"""").append(pathToRoot)
-                .append("""
-                        assets/images/Logo.png" alt="JRXNA" style="height:24px; vertical-align:middle;">
-                                            </a>
-                                        </div>
-                                        <a href="https://youtube.com/@jrxna" target="_blank" class="videos-link">Videos</a>
-                                    </header>
-                                    <label for="menu-toggle" class="overlay"></label>
-                                    <nav class="sidebar">
-                        """);
-
-        // Find which section contains the current file
-        Section currentSection = null;
-        for (Section section : sections) {
-            if (section.getFiles().contains(file)) {
-                currentSection = section;
-                break;
+        layoutFor(options).render(html, (hole, out) -> {
+            switch (hole) {
+                case TITLE -> out.write(file.getTitle());
+                case SITE_NAME -> out.write(siteName);
+                case ROOT -> out.write(pathToRoot);
+                case STYLESHEET -> writeStylesheetTag(out, pathToRoot, options);
+                case SEARCH_HEAD -> writeSearchTags(out, pathToRoot, options);
+                case SEARCH_BOX -> {
+                    if (options.isSearch()) {
+                        out.write(SEARCH_BOX);
+                    }
+                }
+                case SIDEBAR -> writeSidebar(out, file, navigation, pathToRoot, options);
+                case DATE -> out.write(file.getDate().format(DATE_FORMATTER));
+                case CONTENT -> out.write(file.getHtmlContent());
+                case TOC -> writeToc(out, file.getTableOfContents());
             }
-        }
+        });
+    }
 
-        // Special case: if this is index.html, open the first section
-        if (file.getOutputPath().equals("index.html") && !sections.isEmpty()) {
-            currentSection = sections.get(0);
+    /**
+     * Compiles the layout named by the options so a missing or broken file
+     * fails the build before any page is rendered. Called before every
+     * build, it compiles the file again only when it has changed.
+     */
+    public void loadLayout(BuildOptions options) throws IOException {
+        String path = options.getLayoutPath();
+        if (path == null) {
+            return;
         }
-
-        // Generate sidebar sections
-        for (Section section : sections) {
-            html.append("                <div class=\"sidebar-section\">\n");
-            // Add 'open' attribute if this section contains the current file
-            if (section.equals(currentSection)) {
-                html.append("                    <details open>\n");
-            } else {
-                html.append("                    <details>\n");
-            }
-            html.append("                        <summary class=\"sidebar-title\">").append(section.getTitle())
-                    .append("</summary>\n");
-            html.append("                        <ul class=\"note-list\">\n");
-
-            for (MarkdownFile sectionFile : section.getFiles()) {
-                // Compare by filePath instead of object equality
-                String activeClass = sectionFile.getFilePath().equals(file.getFilePath()) ? " active" : "";
-                String relativePath = calculateRelativePath(file.getOutputPath(), sectionFile.getOutputPath());
-                html.append("                            <li class=\"note-item\"><a href=\"")
-                        .append(relativePath)
-                        .append("\" class=\"note-link")
-                        .append(activeClass)
-                        .append("\">")
-                        .append(sectionFile.getTitle())
-                        .append("</a></li>\n");
+        try {
+            String content = Files.readString(Paths.get(path));
+            String fingerprint = fingerprint(content);
+            Layout loaded = layouts.get(path);
+            if (loaded == null || !loaded.fingerprint.equals(fingerprint)) {
+                layouts.put(path, new Layout(PageTemplate.compile(content), fingerprint));
             }
+        } catch (NoSuchFileException e) {
+            throw new IOException("Layout file does not exist: " + path, e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid layout " + path + ": " + e.getMessage(), e);
+        }
+    }
 
-            html.append("                        </ul>\n");
-            html.append("                    </details>\n");
-            html.append("                </div>\n");
+    /**
+     * Identifies the layout pages are rendered with by its content, for the
+     * build manifest. Null for the built-in layout, which the version
+     * already covers.
+     */
+    public String getLayoutFingerprint(BuildOptions options) throws IOException {
+        String path = options.getLayoutPath();
+        if (path == null) {
+            return null;
+        }
+        if (!layouts.containsKey(path)) {
+            loadLayout(options);
         }
+        return layouts.get(path).fingerprint;
+    }
 
-        html.append("""
-                </nav>
-                <main class="main-content">
-                    <div class="content-header">
-                        <h1 class="page-title">""").append(file.getTitle()).append("""
-                </h1>
-                                    <div class="page-meta">""").append(file.getDate().format(DATE_FORMATTER)).append("""
-                </div>
-                                </div>
-                                <div class="content-body">
-                """).append(file.getHtmlContent()).append("""
-                                </div>
-                            </main>
-                            <aside class="toc">
-                """);
-
-        // Generate TOC
-        if (!file.getTableOfContents().isEmpty()) {
-            html.append("                <ul class=\"toc-list\">\n");
-            for (TOCItem item : file.getTableOfContents()) {
-                html.append("                    <li class=\"toc-item\"><a href=\"#")
-                        .append(item.getId())
-                        .append("\" class=\"toc-link ")
-                        .append(item.getLevelClass())
-                        .append("\">")
-                        .append(item.getText())
-                        .append("</a></li>\n");
+    private PageTemplate layoutFor(BuildOptions options) {
+        String path = options.getLayoutPath();
+        if (path == null) {
+            return defaultLayout;
+        }
+        Layout layout = layouts.get(path);
+        if (layout == null) {
+            try {
+                loadLayout(options);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            html.append("                </ul>\n");
+            layout = layouts.get(path);
         }
+        return layout.template;
+    }
 
-        html.append("""
-                            </aside>
-                        </div>
-                    </div>
-                </body>
-                </html>""");
+    /**
+     * The whole sidebar, or with --nav=fragment the current section and the
+     * script that swaps in the shared fragment.
+     */
+    private void writeSidebar(PageBuffer out, MarkdownFile file, NavigationModel navigation, String pathToRoot,
+            BuildOptions options) {
+        if (!options.isNavigationFragment()) {
+            navigation.appendSidebar(out, file);
+            return;
+        }
+        out.write(NAV_START);
+        navigation.appendCurrentSection(out, file);
+        out.write(NAV_END)
+                .write("                <script src=\"").write(pathToRoot).write("assets/js/nav.js\" data-root=\"")
+                .write(pathToRoot).write("\" data-nav=\"").write(navigation.getFragmentPath())
+                .write("\" defer></script>\n");
+    }
 
-        return html.toString();
+    private void writeToc(PageBuffer out, List<TOCItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        out.write(TOC_START);
+        for (TOCItem item : items) {
+            out.write(TOC_ITEM_START)
+                    .write(item.getId())
+                    .write(TOC_ITEM_CLASS)
+                    .write(item.getLevelClass())
+                    .write(TOC_ITEM_TEXT)
+                    .write(item.getText())
+                    .write(TOC_ITEM_END);
+        }
+        out.write(TOC_END);
     }
 
     // Calculate path to root based on file depth
@@ -475,42 +219,55 @@ public class TemplateService {
         return "../".repeat((int) depth);
     }
 
-    private String calculateRelativePath(String fromPath, String toPath) {
-        // Get directory parts
-        String[] fromParts = fromPath.contains("/")
-                ? fromPath.substring(0, fromPath.lastIndexOf('/')).split("/")
-                : new String[0];
-        String[] toParts = toPath.contains("/")
-                ? toPath.substring(0, toPath.lastIndexOf('/')).split("/")
-                : new String[0];
-
-        String toFile = toPath.contains("/")
-                ? toPath.substring(toPath.lastIndexOf('/') + 1)
-                : toPath;
-
-        // Same directory
-        if (fromParts.length == toParts.length &&
-                (fromParts.length == 0 || java.util.Arrays.equals(fromParts, toParts))) {
-            return toFile;
+    private void writeStylesheetTag(PageBuffer out, String pathToRoot, BuildOptions options) {
+        if (!options.isExternalStylesheet()) {
+            out.write(inlineStylesheet);
+            return;
         }
+        out.write("    <link rel=\"stylesheet\" href=\"").write(pathToRoot).write(stylesheetPath).write("\">\n");
+    }
 
-        // From root to subdirectory
-        if (fromParts.length == 0) {
-            return toPath;
+    private void writeSearchTags(PageBuffer out, String pathToRoot, BuildOptions options) {
+        if (!options.isSearch()) {
+            return;
         }
+        out.write("    <link rel=\"stylesheet\" href=\"").write(pathToRoot).write("assets/css/search.css\">\n")
+                .write("    <script src=\"").write(pathToRoot).write("assets/js/search.js\" data-root=\"")
+                .write(pathToRoot).write("\" defer></script>\n");
+    }
 
-        // From subdirectory to root
-        if (toParts.length == 0) {
-            return "../" + toPath;
+    private String loadResource(String name) {
+        try (InputStream in = getClass().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        // Different subdirectories - go up to root, then down
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < fromParts.length; i++) {
-            result.append("../");
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String fingerprint(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 5);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
-        result.append(toPath);
+    }
 
-        return result.toString();
+    // A compiled --layout file and the fingerprint of the content it came from
+    private static final class Layout {
+        final PageTemplate template;
+        final String fingerprint;
+
+        Layout(PageTemplate template, String fingerprint) {
+            this.template = template;
+            this.fingerprint = fingerprint;
+        }
     }
-}
\ No newline at end of file
+}
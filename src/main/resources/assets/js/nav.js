@@ -0,0 +1,45 @@
+// Replaces the current-section sidebar a page ships with by the shared
+// fragment in assets/nav/. The fragment is content-hashed, so the browser
+// fetches it once for the whole site. Its links are relative to the root.
+(function () {
+    "use strict";
+
+    var script = document.currentScript;
+    var root = script.getAttribute("data-root") || "";
+    var container = document.getElementById("sidebar-nav");
+    if (!container || !window.fetch) {
+        return;
+    }
+
+    // The section the page opened, to open again in the full sidebar
+    var open = container.querySelector("details[open] .sidebar-title");
+    var openTitle = open ? open.textContent : null;
+
+    fetch(root + script.getAttribute("data-nav")).then(function (response) {
+        return response.ok ? response.text() : Promise.reject(response.status);
+    }).then(function (html) {
+        var template = document.createElement("template");
+        template.innerHTML = html;
+        var here = new URL(location.href);
+        here.hash = "";
+        here.search = "";
+
+        template.content.querySelectorAll("a.note-link").forEach(function (link) {
+            link.setAttribute("href", root + link.getAttribute("href"));
+            if (new URL(link.getAttribute("href"), here).href === here.href) {
+                link.classList.add("active");
+                link.closest("details").open = true;
+            }
+        });
+        template.content.querySelectorAll("details").forEach(function (details) {
+            var title = details.querySelector(".sidebar-title");
+            if (title && title.textContent === openTitle) {
+                details.open = true;
+            }
+        });
+
+        container.replaceChildren(template.content);
+    }).catch(function () {
+        // Opened from disk or offline: the current section stays
+    });
+})();
@@ -0,0 +1,134 @@
+// Client for the sharded index in search/. Only the shards of the typed
+// terms and the document chunks of the shown results are fetched, once each.
+(function () {
+    "use strict";
+
+    var root = document.currentScript.getAttribute("data-root") || "";
+    var MAX_RESULTS = 10;
+    var MAX_PREFIX_TERMS = 50;
+    var DOCS_PER_CHUNK = 250; // Same as SearchIndexService
+
+    // Keep in sync with STOP_WORDS in SearchIndexService
+    var STOP_WORDS = new Set(["an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "in", "is",
+        "it", "its", "of", "on", "or", "that", "the", "this", "to", "was", "were", "will", "with",
+        "http", "https", "www", "com"]);
+
+    var shards = {};
+    var chunks = {};
+
+    function fetchJson(path) {
+        return fetch(root + path).then(function (response) {
+            return response.ok ? response.json() : {};
+        }).catch(function () {
+            return {};
+        });
+    }
+
+    function tokenize(query) {
+        return query.toLowerCase().split(/[^\p{L}\p{N}]+/u).filter(function (term) {
+            return term.length >= 2 && term.length <= 32 && !STOP_WORDS.has(term);
+        });
+    }
+
+    function shardOf(term) {
+        return term.slice(0, 2).replace(/[^a-z0-9]/g, "_");
+    }
+
+    function shard(term) {
+        var name = shardOf(term);
+        if (!shards[name]) {
+            shards[name] = fetchJson("search/shards/" + name + ".json");
+        }
+        return shards[name];
+    }
+
+    // [url, title] of a document id
+    function doc(id) {
+        var name = Math.floor(id / DOCS_PER_CHUNK);
+        if (!chunks[name]) {
+            chunks[name] = fetchJson("search/docs/" + name + ".json");
+        }
+        return chunks[name].then(function (chunk) {
+            return chunk[id % DOCS_PER_CHUNK];
+        });
+    }
+
+    // Scores of the pages matching one term; the last term of a query also
+    // matches as a prefix, so results show up while typing
+    function postings(term, prefix) {
+        return shard(term).then(function (index) {
+            var scores = new Map();
+            var terms = prefix
+                ? Object.keys(index).filter(function (t) { return t.startsWith(term); }).slice(0, MAX_PREFIX_TERMS)
+                : (index[term] ? [term] : []);
+            terms.forEach(function (t) {
+                var list = index[t];
+                for (var i = 0; i < list.length; i += 2) {
+                    scores.set(list[i], Math.max(scores.get(list[i]) || 0, list[i + 1]));
+                }
+            });
+            return scores;
+        });
+    }
+
+    function search(query) {
+        var terms = tokenize(query);
+        if (terms.length === 0) {
+            return Promise.resolve([]);
+        }
+        var lookups = terms.map(function (term, i) { return postings(term, i === terms.length - 1); });
+
+        return Promise.all(lookups).then(function (matches) {
+            // Every term has to match; scores add up
+            var total = matches[0];
+            matches.slice(1).forEach(function (scores) {
+                var next = new Map();
+                total.forEach(function (score, id) {
+                    if (scores.has(id)) {
+                        next.set(id, score + scores.get(id));
+                    }
+                });
+                total = next;
+            });
+
+            var top = Array.from(total.entries())
+                .sort(function (a, b) { return b[1] - a[1] || a[0] - b[0]; })
+                .slice(0, MAX_RESULTS);
+            return Promise.all(top.map(function (entry) { return doc(entry[0]); }));
+        }).then(function (docs) {
+            return docs.filter(Boolean);
+        });
+    }
+
+    document.addEventListener("DOMContentLoaded", function () {
+        var input = document.getElementById("search-input");
+        var list = document.getElementById("search-results");
+        if (!input || !list) {
+            return;
+        }
+
+        var timer = null;
+        var latest = 0;
+        input.addEventListener("input", function () {
+            clearTimeout(timer);
+            timer = setTimeout(function () {
+                var run = ++latest;
+                search(input.value).then(function (results) {
+                    if (run !== latest) {
+                        return;
+                    }
+                    list.textContent = "";
+                    results.forEach(function (result) {
+                        var item = document.createElement("li");
+                        item.className = "search-result";
+                        var link = document.createElement("a");
+                        link.href = root + result[0];
+                        link.textContent = result[1];
+                        item.appendChild(link);
+                        list.appendChild(item);
+                    });
+                });
+            }, 60);
+        });
+    });
+})();
@@ -0,0 +1,197 @@
+package com.jrxna.mongoose.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveSinkTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tarKeepsPathsAcrossHeaderLimits() throws IOException {
+        Map<String, byte[]> pages = new LinkedHashMap<>();
+        for (String path : List.of(
+                "index.html",
+                "n".repeat(100),
+                "n".repeat(101),
+                "d".repeat(155) + "/" + "n".repeat(100),
+                "d".repeat(156) + "/" + "n".repeat(99),
+                "d".repeat(10) + "/" + "n".repeat(101),
+                ("segment-" + "s".repeat(40) + "/").repeat(6) + "page.html",
+                "guide/" + "ü".repeat(60) + ".html")) {
+            pages.put(path, ("<p>" + path + "</p>").getBytes(StandardCharsets.UTF_8));
+        }
+        pages.put("empty.html", new byte[0]);
+
+        Path archive = dir.resolve("site.tar");
+        write(archive, pages, List.copyOf(pages.keySet()));
+        byte[] tar = Files.readAllBytes(archive);
+
+        assertEquals(0, tar.length % (20 * 512), "tar length is whole records");
+        Map<String, byte[]> read = readTar(tar);
+        assertEquals(pages.keySet().stream().sorted().toList(), List.copyOf(read.keySet()));
+        for (Map.Entry<String, byte[]> page : pages.entrySet()) {
+            assertArrayEquals(page.getValue(), read.get(page.getKey()), page.getKey());
+        }
+    }
+
+    @Test
+    void tarSplitsAtTheLastFittingSlash() throws IOException {
+        String path = "d".repeat(155) + "/" + "n".repeat(100);
+        Path archive = dir.resolve("site.tar");
+        write(archive, Map.of(path, new byte[] {1}), List.of(path));
+        byte[] header = Arrays.copyOfRange(Files.readAllBytes(archive), 0, 512);
+
+        // Fits the ustar fields, so no pax header is needed
+        assertEquals('0', header[156]);
+        assertEquals("n".repeat(100), field(header, 0, 100));
+        assertEquals("d".repeat(155), field(header, 345, 155));
+    }
+
+    @Test
+    void zipDoesNotDependOnWriteOrder() throws IOException, InterruptedException {
+        Map<String, byte[]> pages = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            pages.put("posts/" + i + "/index.html", ("<h1>Post " + i + "</h1>").repeat(i + 1)
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> order = new ArrayList<>(pages.keySet());
+
+        Path first = dir.resolve("first.zip");
+        write(first, pages, order);
+
+        // Reversed and from several threads, as pages finish rendering
+        Collections.reverse(order);
+        Path second = dir.resolve("second.zip");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try (ArchiveSink sink = new ArchiveSink(second, false)) {
+            List<Future<?>> writes = new ArrayList<>();
+            for (String path : order) {
+                writes.add(pool.submit(() -> {
+                    sink.write(path, new PageBuffer().write(pages.get(path)));
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+            sink.finish();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+
+    @Test
+    void tarGzIsReproducible() throws IOException {
+        Map<String, byte[]> pages = Map.of(
+                "a.html", "a".getBytes(StandardCharsets.UTF_8),
+                "b/c.html", "c".getBytes(StandardCharsets.UTF_8));
+        Path first = dir.resolve("first.tar.gz");
+        Path second = dir.resolve("second.tgz");
+        write(first, pages, List.of("a.html", "b/c.html"));
+        write(second, pages, List.of("b/c.html", "a.html"));
+
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    }
+
+    private static void write(Path archive, Map<String, byte[]> pages, List<String> order) throws IOException {
+        try (ArchiveSink sink = new ArchiveSink(archive, false)) {
+            for (String path : order) {
+                sink.write(path, new PageBuffer().write(pages.get(path)));
+            }
+            sink.finish();
+        }
+    }
+
+    /**
+     * Reads regular files out of a ustar archive, taking paths from pax
+     * headers where present, and checks every header's checksum.
+     */
+    private static Map<String, byte[]> readTar(byte[] tar) {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        String paxPath = null;
+        int offset = 0;
+        while (true) {
+            byte[] header = Arrays.copyOfRange(tar, offset, offset + 512);
+            if (Arrays.equals(header, new byte[512])) {
+                return files;
+            }
+            assertEquals(checksum(header), Long.parseLong(field(header, 148, 8).trim(), 8), "checksum");
+            assertEquals("ustar\u000000", new String(header, 257, 8, StandardCharsets.US_ASCII));
+
+            int size = (int) Long.parseLong(field(header, 124, 12), 8);
+            byte[] data = Arrays.copyOfRange(tar, offset + 512, offset + 512 + size);
+            offset += 512 + (size + 511) / 512 * 512;
+
+            if (header[156] == 'x') {
+                paxPath = paxPath(data);
+                continue;
+            }
+            assertEquals('0', header[156]);
+            String prefix = field(header, 345, 155);
+            String name = prefix.isEmpty() ? field(header, 0, 100) : prefix + "/" + field(header, 0, 100);
+            files.put(paxPath != null ? paxPath : name, data);
+            paxPath = null;
+        }
+    }
+
+    private static String paxPath(byte[] data) {
+        String path = null;
+        int position = 0;
+        while (position < data.length) {
+            int space = position;
+            while (data[space] != ' ') {
+                space++;
+            }
+            int length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.US_ASCII));
+            assertEquals('\n', data[position + length - 1], "pax record length");
+            String record = new String(data, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                path = record.substring("path=".length());
+            }
+            position += length;
+        }
+        return path;
+    }
+
+    // A NUL-terminated header field, read as UTF-8
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long checksum(byte[] header) {
+        long sum = 0;
+        for (int i = 0; i < header.length; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+        return sum;
+    }
+}
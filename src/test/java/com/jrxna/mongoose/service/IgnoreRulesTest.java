@@ -0,0 +1,94 @@
+package com.jrxna.mongoose.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IgnoreRulesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void patternWithoutSlashMatchesNamesAtAnyDepth() throws IOException {
+        IgnoreRules rules = rules("", "*.tmp");
+
+        assertTrue(rules.ignores("a.tmp", "a.tmp", false));
+        assertTrue(rules.ignores("guide/deep/b.tmp", "b.tmp", false));
+        assertFalse(rules.ignores("guide/tmp.md", "tmp.md", false));
+    }
+
+    @Test
+    void leadingSlashAnchorsToTheFilesDirectory() throws IOException {
+        IgnoreRules rules = rules("", "/drafts");
+
+        assertTrue(rules.ignores("drafts", "drafts", true));
+        assertFalse(rules.ignores("notes/drafts", "drafts", true));
+    }
+
+    @Test
+    void patternWithSlashMatchesRelativeToItsBase() throws IOException {
+        IgnoreRules rules = rules("guide", "internal/*.md");
+
+        assertTrue(rules.ignores("guide/internal/plan.md", "plan.md", false));
+        assertFalse(rules.ignores("guide/internal/deep/plan.md", "plan.md", false));
+        assertFalse(rules.ignores("guide/other/internal/plan.md", "plan.md", false));
+    }
+
+    @Test
+    void negationTakesAMatchBack() throws IOException {
+        IgnoreRules rules = rules("", "*.md", "!keep.md");
+
+        assertTrue(rules.ignores("notes/other.md", "other.md", false));
+        assertFalse(rules.ignores("notes/keep.md", "keep.md", false));
+    }
+
+    @Test
+    void lastMatchingPatternWins() throws IOException {
+        IgnoreRules rules = rules("", "!keep.md", "*.md");
+
+        assertTrue(rules.ignores("keep.md", "keep.md", false));
+    }
+
+    @Test
+    void nestedFileOverridesItsParent() throws IOException {
+        IgnoreRules root = rules("", "*.draft.md");
+        IgnoreRules nested = root.with(file("!wip.draft.md"), "posts");
+
+        assertTrue(nested.ignores("posts/old.draft.md", "old.draft.md", false));
+        assertFalse(nested.ignores("posts/wip.draft.md", "wip.draft.md", false));
+        assertTrue(root.ignores("posts/wip.draft.md", "wip.draft.md", false));
+    }
+
+    @Test
+    void trailingSlashOnlyMatchesDirectories() throws IOException {
+        IgnoreRules rules = rules("", "build/");
+
+        assertTrue(rules.ignores("build", "build", true));
+        assertTrue(rules.ignores("guide/build", "build", true));
+        assertFalse(rules.ignores("build", "build", false));
+    }
+
+    @Test
+    void commentsAndBlankLinesAreSkipped() throws IOException {
+        IgnoreRules rules = rules("", "# *.md", "", "   ", "  *.bak  ");
+
+        assertFalse(rules.ignores("# notes.md", "# notes.md", false));
+        assertFalse(rules.ignores("notes.md", "notes.md", false));
+        assertTrue(rules.ignores("notes.bak", "notes.bak", false));
+    }
+
+    private IgnoreRules rules(String base, String... lines) throws IOException {
+        return IgnoreRules.NONE.with(file(lines), base);
+    }
+
+    private Path file(String... lines) throws IOException {
+        return Files.write(Files.createTempFile(dir, "ignore", ""), String.join("\n", lines).getBytes());
+    }
+}